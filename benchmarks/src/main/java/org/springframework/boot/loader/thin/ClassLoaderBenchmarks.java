@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for creating the application class loader for a large classpath, and for
+ * looking up resources and classes in it.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClassLoaderBenchmarks {
+
+	@Param({ "200" })
+	private int jars;
+
+	private RepositoryFixture fixture;
+
+	private ThinJarLauncher launcher;
+
+	private URL[] urls;
+
+	private ClassLoader classLoader;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.fixture = new RepositoryFixture(new File("target/fixtures/classloader"),
+				this.jars, 0, 1, 50).create();
+		this.launcher = new ThinJarLauncher(new String[] {
+				"--thin.archive=" + this.fixture.getApp().getAbsolutePath() });
+		this.urls = this.fixture.getJars();
+		this.classLoader = this.launcher.createClassLoader(this.urls);
+		// Load it once, so the benchmark measures the hit
+		loadClassInLastJar();
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws Exception {
+		if (this.classLoader instanceof URLClassLoader) {
+			((URLClassLoader) this.classLoader).close();
+		}
+		this.fixture.close();
+	}
+
+	@Benchmark
+	public void createClassLoader(Blackhole blackhole) throws Exception {
+		ClassLoader classLoader = this.launcher.createClassLoader(this.urls);
+		blackhole.consume(classLoader);
+		if (classLoader instanceof Closeable) {
+			((Closeable) classLoader).close();
+		}
+	}
+
+	@Benchmark
+	public URL findResourceInLastJar() {
+		return this.classLoader.getResource(this.fixture.getResource(this.jars - 1, 0));
+	}
+
+	@Benchmark
+	public Class<?> loadClassInLastJar() throws Exception {
+		return this.classLoader.loadClass(this.fixture.getClassName(this.jars - 1));
+	}
+
+	@Benchmark
+	public URL findMissingResource() {
+		return this.classLoader.getResource("com/example/thin/Missing.class");
+	}
+
+	@Benchmark
+	public Class<?> loadMissingClass() {
+		try {
+			return this.classLoader.loadClass("com.example.thin.Missing");
+		}
+		catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+}
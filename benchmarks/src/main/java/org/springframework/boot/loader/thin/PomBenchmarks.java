@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.graph.Dependency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.cli.compiler.RepositoryConfigurationFactory;
+import org.springframework.boot.cli.compiler.grape.DependencyResolutionContext;
+import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Benchmarks for reading poms: the dependencies of a pom with a deep parent chain, the
+ * managed dependencies of some BOMs, and parsing dependency co-ordinates.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PomBenchmarks {
+
+	@Param({ "10" })
+	private int depth;
+
+	@Param({ "5" })
+	private int boms;
+
+	@Param({ "org.springframework.boot:spring-boot-starter-web",
+			"org.springframework.boot:spring-boot-cli:jar:full:1.4.2.RELEASE" })
+	private String coordinates;
+
+	private AetherEngine engine;
+
+	private Resource pom;
+
+	private List<Dependency> managed;
+
+	private RepositoryFixture fixture;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.fixture = new RepositoryFixture(
+				new File("target/fixtures/pom"), 50, this.depth, this.boms, 1).create();
+		this.engine = AetherEngine.create(
+				RepositoryConfigurationFactory.createDefaultRepositoryConfiguration(),
+				new DependencyResolutionContext(), ProgressType.NONE);
+		this.pom = new FileSystemResource(this.fixture.getDeepPom());
+		this.managed = this.fixture.getBoms();
+		// Download the poms once, so the benchmarks measure the warm path
+		getDependencies();
+		addDependencyManagementBoms();
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		this.fixture.close();
+	}
+
+	@Benchmark
+	public List<Dependency> getDependencies() {
+		return new PomLoader(this.engine).getDependencies(this.pom);
+	}
+
+	@Benchmark
+	public AetherEngine addDependencyManagementBoms() {
+		AetherEngine engine = this.engine.withContext(new DependencyResolutionContext());
+		engine.addDependencyManagementBoms(this.managed);
+		return engine;
+	}
+
+	@Benchmark
+	public Dependency parseDependency() {
+		return ArchiveUtils.parseDependency(this.coordinates, "jar", "compile");
+	}
+
+}
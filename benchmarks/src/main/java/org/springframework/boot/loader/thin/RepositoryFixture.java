@@ -0,0 +1,362 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.eclipse.aether.graph.Dependency;
+
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * A generated Maven repository on the local file system, with a Maven settings file
+ * that mirrors every remote repository to it, so that the benchmarks never touch the
+ * network. It contains a chain of parent poms, some BOMs that manage all the libraries,
+ * and libraries that depend on each other in short chains. There are two apps (a parent
+ * and a child) declared in <code>thin.properties</code>, and a pom that inherits from
+ * the end of the parent chain.
+ *
+ * @author Dave Syer
+ *
+ */
+class RepositoryFixture {
+
+	static final String GROUP = "com.example.thin";
+
+	static final String VERSION = "1.0";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File root;
+
+	private final File remote;
+
+	private final File local;
+
+	private final int libraries;
+
+	private final int depth;
+
+	private final int boms;
+
+	private final int classes;
+
+	private String userHome;
+
+	private String grapeRoot;
+
+	RepositoryFixture(File root, int libraries, int depth, int boms, int classes) {
+		this.root = root.getAbsoluteFile();
+		this.remote = new File(this.root, "remote");
+		this.local = new File(this.root, "local");
+		this.libraries = libraries;
+		this.depth = depth;
+		this.boms = boms;
+		this.classes = classes;
+	}
+
+	/**
+	 * Create the repository and the apps from scratch, and switch the Maven
+	 * configuration of this JVM to use them (by changing <code>user.home</code> and
+	 * <code>grape.root</code> until {@link #close()} is called).
+	 * @return this fixture
+	 */
+	public RepositoryFixture create() {
+		FileSystemUtils.deleteRecursively(this.root);
+		try {
+			for (int i = 0; i < this.depth; i++) {
+				writeParent(i);
+			}
+			for (int i = 0; i < this.boms; i++) {
+				writeBom(i);
+			}
+			for (int i = 0; i < this.libraries; i++) {
+				writeLibrary(i);
+			}
+			writeApp(getApp(), this.libraries);
+			writeApp(getParentApp(), this.libraries / 2);
+			writeDeepPom();
+			writeSettings();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot create fixture in " + this.root, e);
+		}
+		this.userHome = System.getProperty("user.home");
+		this.grapeRoot = System.getProperty("grape.root");
+		System.setProperty("user.home", new File(this.root, "home").getPath());
+		System.setProperty("grape.root", this.local.getPath());
+		return this;
+	}
+
+	/**
+	 * Put back the Maven configuration of this JVM as it was before {@link #create()}.
+	 */
+	public void close() {
+		restore("user.home", this.userHome);
+		restore("grape.root", this.grapeRoot);
+	}
+
+	/**
+	 * Empty the local repository, so the next resolution starts from a cold cache.
+	 */
+	public void clearLocal() {
+		FileSystemUtils.deleteRecursively(this.local);
+		FileSystemUtils.deleteRecursively(new File(this.root, "thin"));
+	}
+
+	public File getApp() {
+		return new File(this.root, "apps/app");
+	}
+
+	public File getParentApp() {
+		return new File(this.root, "apps/parent");
+	}
+
+	public File getDeepPom() {
+		return new File(this.root, "deep/pom.xml");
+	}
+
+	public List<Dependency> getBoms() {
+		List<Dependency> result = new ArrayList<>();
+		for (int i = 0; i < this.boms; i++) {
+			result.add(ArchiveUtils.parseDependency(
+					GROUP + ":bom-" + i + ":" + VERSION, "pom", "import"));
+		}
+		return result;
+	}
+
+	public URL[] getJars() {
+		URL[] urls = new URL[this.libraries];
+		try {
+			for (int i = 0; i < this.libraries; i++) {
+				urls[i] = artifact("lib-" + i, "jar").toURI().toURL();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot create URL", e);
+		}
+		return urls;
+	}
+
+	/**
+	 * @param library the index of a library
+	 * @param index the index of a class in the library
+	 * @return the name of a resource in the jar file of the library
+	 */
+	public String getResource(int library, int index) {
+		return "com/example/thin/lib" + library + "/Class" + index + ".class";
+	}
+
+	/**
+	 * @param library the index of a library
+	 * @return the name of a class in the jar file of the library that can be loaded
+	 */
+	public String getClassName(int library) {
+		return "com.example.thin.lib" + library + ".Loadable";
+	}
+
+	private void restore(String name, String value) {
+		if (value == null) {
+			System.clearProperty(name);
+		}
+		else {
+			System.setProperty(name, value);
+		}
+	}
+
+	private void writeParent(int level) throws IOException {
+		StringBuilder pom = new StringBuilder();
+		pom.append("<project>\n  <modelVersion>4.0.0</modelVersion>\n");
+		if (level > 0) {
+			pom.append(parent("parent-" + (level - 1)));
+		}
+		pom.append(coordinates("parent-" + level, "pom"));
+		pom.append("  <properties>\n");
+		pom.append("    <level.").append(level).append(">").append(level)
+				.append("</level.").append(level).append(">\n");
+		if (level == 0) {
+			pom.append("    <lib.version>").append(VERSION).append("</lib.version>\n");
+		}
+		pom.append("  </properties>\n</project>\n");
+		write(artifact("parent-" + level, "pom"), pom.toString());
+	}
+
+	private void writeBom(int index) throws IOException {
+		StringBuilder pom = new StringBuilder();
+		pom.append("<project>\n  <modelVersion>4.0.0</modelVersion>\n");
+		pom.append(coordinates("bom-" + index, "pom"));
+		pom.append("  <dependencyManagement>\n    <dependencies>\n");
+		for (int i = index; i < this.libraries; i += this.boms) {
+			pom.append("      <dependency>\n        <groupId>").append(GROUP)
+					.append("</groupId>\n        <artifactId>lib-").append(i)
+					.append("</artifactId>\n        <version>").append(VERSION)
+					.append("</version>\n      </dependency>\n");
+		}
+		pom.append("    </dependencies>\n  </dependencyManagement>\n</project>\n");
+		write(artifact("bom-" + index, "pom"), pom.toString());
+	}
+
+	private void writeLibrary(int index) throws IOException {
+		StringBuilder pom = new StringBuilder();
+		pom.append("<project>\n  <modelVersion>4.0.0</modelVersion>\n");
+		pom.append(coordinates("lib-" + index, "jar"));
+		if (index % 5 != 0) {
+			// Short transitive chains: lib-4 -> lib-3 -> ... -> lib-0
+			pom.append(dependencies(index - 1, index, VERSION));
+		}
+		pom.append("</project>\n");
+		write(artifact("lib-" + index, "pom"), pom.toString());
+		File jar = artifact("lib-" + index, "jar");
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(jar))) {
+			for (int i = 0; i < this.classes; i++) {
+				output.putNextEntry(new ZipEntry(getResource(index, i)));
+				output.write(new byte[] { (byte) 0xca, (byte) 0xfe, (byte) 0xba,
+						(byte) 0xbe });
+				output.closeEntry();
+			}
+			String name = getClassName(index).replace(".", "/");
+			output.putNextEntry(new ZipEntry(name + ".class"));
+			writeClass(output, name);
+			output.closeEntry();
+		}
+		checksum(jar);
+	}
+
+	/**
+	 * Write the smallest valid class file: an empty public class extending Object.
+	 */
+	private void writeClass(JarOutputStream output, String name) throws IOException {
+		DataOutputStream data = new DataOutputStream(output);
+		data.writeInt(0xcafebabe);
+		data.writeShort(0); // minor version
+		data.writeShort(49); // Java 5, so there are no stack maps to write
+		data.writeShort(5); // constant pool size + 1
+		data.writeByte(7); // #1 class
+		data.writeShort(2);
+		data.writeByte(1); // #2 utf8
+		data.writeUTF(name);
+		data.writeByte(7); // #3 class
+		data.writeShort(4);
+		data.writeByte(1); // #4 utf8
+		data.writeUTF("java/lang/Object");
+		data.writeShort(0x0021); // public super
+		data.writeShort(1); // this
+		data.writeShort(3); // super
+		data.writeShort(0); // interfaces
+		data.writeShort(0); // fields
+		data.writeShort(0); // methods
+		data.writeShort(0); // attributes
+		data.flush();
+	}
+
+	private void writeApp(File app, int libraries) throws IOException {
+		StringBuilder properties = new StringBuilder();
+		for (int i = 0; i < this.boms; i++) {
+			properties.append("boms.bom-").append(i).append("=").append(GROUP)
+					.append(":bom-").append(i).append(":").append(VERSION).append("\n");
+		}
+		for (int i = 0; i < libraries; i++) {
+			if (i % 5 == 4 || i == libraries - 1) {
+				// The top of each chain pulls in the rest
+				properties.append("dependencies.lib-").append(i).append("=")
+						.append(GROUP).append(":lib-").append(i).append("\n");
+			}
+		}
+		write(new File(app, "META-INF/thin.properties"), properties.toString());
+	}
+
+	private void writeDeepPom() throws IOException {
+		StringBuilder pom = new StringBuilder();
+		pom.append("<project>\n  <modelVersion>4.0.0</modelVersion>\n");
+		if (this.depth > 0) {
+			pom.append(parent("parent-" + (this.depth - 1)));
+		}
+		pom.append("  <artifactId>deep</artifactId>\n");
+		pom.append(dependencies(0, this.libraries,
+				this.depth > 0 ? "${lib.version}" : VERSION));
+		pom.append("</project>\n");
+		write(getDeepPom(), pom.toString());
+	}
+
+	private void writeSettings() throws IOException {
+		write(new File(this.root, "home/.m2/settings.xml"),
+				"<settings>\n  <localRepository>"
+						+ new File(this.local, "repository").getPath()
+						+ "</localRepository>\n  <mirrors>\n    <mirror>\n"
+						+ "      <id>fixture</id>\n      <mirrorOf>*</mirrorOf>\n"
+						+ "      <url>" + this.remote.toURI() + "</url>\n"
+						+ "    </mirror>\n  </mirrors>\n</settings>\n");
+	}
+
+	private String parent(String artifactId) {
+		return "  <parent>\n    <groupId>" + GROUP + "</groupId>\n    <artifactId>"
+				+ artifactId + "</artifactId>\n    <version>" + VERSION
+				+ "</version>\n  </parent>\n";
+	}
+
+	private String coordinates(String artifactId, String packaging) {
+		return "  <groupId>" + GROUP + "</groupId>\n  <artifactId>" + artifactId
+				+ "</artifactId>\n  <version>" + VERSION + "</version>\n  <packaging>"
+				+ packaging + "</packaging>\n";
+	}
+
+	private String dependencies(int from, int to, String version) {
+		StringBuilder builder = new StringBuilder("  <dependencies>\n");
+		for (int i = from; i < to; i++) {
+			builder.append("    <dependency>\n      <groupId>").append(GROUP)
+					.append("</groupId>\n      <artifactId>lib-").append(i)
+					.append("</artifactId>\n      <version>").append(version)
+					.append("</version>\n    </dependency>\n");
+		}
+		return builder.append("  </dependencies>\n").toString();
+	}
+
+	private File artifact(String artifactId, String extension) {
+		return new File(this.remote, GROUP.replace(".", "/") + "/" + artifactId + "/"
+				+ VERSION + "/" + artifactId + "-" + VERSION + "." + extension);
+	}
+
+	private void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				UTF_8)) {
+			writer.write(content);
+		}
+		if (file.getPath().startsWith(this.remote.getPath())) {
+			checksum(file);
+		}
+	}
+
+	private void checksum(File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(
+				new FileOutputStream(file.getPath() + ".sha1"), UTF_8)) {
+			writer.write(LockFile.sha1(file));
+		}
+	}
+
+}
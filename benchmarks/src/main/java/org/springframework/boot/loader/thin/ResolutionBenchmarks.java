@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.loader.archive.Archive;
+import org.springframework.boot.loader.archive.ExplodedArchive;
+import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
+
+/**
+ * Benchmarks for computing the classpath of an app from its
+ * <code>thin.properties</code>, the way the launcher does it (a new
+ * {@link ArchiveUtils} for every launch), with a warm local repository. Only the files
+ * are resolved, so no jars are opened (or left open) by the benchmarks.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResolutionBenchmarks {
+
+	@Param({ "100" })
+	private int libraries;
+
+	@Param({ "5" })
+	private int boms;
+
+	private Archive app;
+
+	private Archive parent;
+
+	private RepositoryFixture fixture;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.fixture = new RepositoryFixture(
+				new File("target/fixtures/resolution"), this.libraries, 3, this.boms, 10)
+						.create();
+		this.app = new ExplodedArchive(this.fixture.getApp());
+		this.parent = new ExplodedArchive(this.fixture.getParentApp());
+		// Download everything once, so the benchmarks measure the warm path
+		utils().classpath(null, this.app, "thin", new String[0]);
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		this.fixture.close();
+	}
+
+	@Benchmark
+	public List<File> extract() {
+		return utils().classpath(null, this.app, "thin", new String[0]);
+	}
+
+	@Benchmark
+	public List<File> combineWithParent() {
+		return utils().classpath(this.parent, this.app, "thin", new String[0]);
+	}
+
+	@Benchmark
+	public List<File> subtract() {
+		return utils().subtractFiles(this.parent, this.app, "thin");
+	}
+
+	private ArchiveUtils utils() {
+		ArchiveUtils utils = new ArchiveUtils();
+		utils.setProgress(ProgressType.NONE);
+		return utils;
+	}
+
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.boot.loader.archive.Archive;
+import org.springframework.boot.loader.archive.JarFileArchive;
+import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
+import org.springframework.boot.loader.tools.Layouts;
+import org.springframework.boot.loader.tools.Libraries;
+import org.springframework.boot.loader.tools.Library;
+import org.springframework.boot.loader.tools.LibraryCallback;
+import org.springframework.boot.loader.tools.LibraryScope;
+import org.springframework.boot.loader.tools.Repackager;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Runs thin jars many times in separate JVMs and records how long they take to start,
+ * with a cold and a warm <code>thin.root</code>, as a dry run, and as the equivalent fat
+ * jar (the same classes and libraries, launched with the Spring Boot
+ * <code>JarLauncher</code>). All the dependencies come from a local repository (by
+ * default <code>~/.m2/repository</code>) used as a <code>file:</code> remote, so the
+ * network does not add noise. For each run it records the time to the first log line
+ * from the app (just after the main method starts), the time until the application
+ * context is ready, the JVM uptime when the thin launcher handed over to the app, the
+ * peak resident memory (on Linux) and the number of classes loaded. The classes are
+ * counted in one extra run of each scenario with <code>-verbose:class</code>, so that
+ * the logging does not slow down the timed runs. The results are written as JSON.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.springframework.boot.loader.thin.StartupHarness \
+ *     --runs=10 samples/app/target/app-0.0.1-SNAPSHOT.jar
+ * </pre>
+ *
+ * Other options are <code>--scenarios</code> (comma separated),
+ * <code>--repository</code>, <code>--output</code>, <code>--timeout</code> (seconds per
+ * run) and <code>--jvm</code> (extra JVM options for the apps, separated by spaces).
+ *
+ * @author Dave Syer
+ *
+ */
+public class StartupHarness {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final List<String> SCENARIOS = Arrays.asList("cold", "warm",
+			"dryrun", "fat");
+
+	private static final Pattern UPTIME = Pattern
+			.compile("JVM running for ([0-9.]+)");
+
+	private static final Pattern LAUNCH = Pattern
+			.compile("\"uptime\": \\{\"count\": [0-9]+, \"wallMillis\": ([0-9]+)");
+
+	private int runs = 10;
+
+	private long timeout = 120;
+
+	private File repository = new File(System.getProperty("user.home"),
+			".m2/repository");
+
+	private File work = new File("target/startup");
+
+	private File output = new File("target/startup.json");
+
+	private List<String> scenarios = SCENARIOS;
+
+	private List<String> options = new ArrayList<>();
+
+	private List<File> jars = new ArrayList<>();
+
+	private List<Map<String, Object>> results = new ArrayList<>();
+
+	public static void main(String[] args) throws Exception {
+		StartupHarness harness = new StartupHarness();
+		for (String arg : args) {
+			if (arg.startsWith("--runs=")) {
+				harness.runs = Integer.valueOf(value(arg));
+			}
+			else if (arg.startsWith("--timeout=")) {
+				harness.timeout = Long.valueOf(value(arg));
+			}
+			else if (arg.startsWith("--repository=")) {
+				harness.repository = new File(value(arg));
+			}
+			else if (arg.startsWith("--work=")) {
+				harness.work = new File(value(arg));
+			}
+			else if (arg.startsWith("--output=")) {
+				harness.output = new File(value(arg));
+			}
+			else if (arg.startsWith("--scenarios=")) {
+				harness.scenarios = Arrays.asList(value(arg).split(","));
+			}
+			else if (arg.startsWith("--jvm=")) {
+				harness.options.addAll(Arrays.asList(value(arg).split(" ")));
+			}
+			else {
+				harness.jars.add(new File(arg));
+			}
+		}
+		if (harness.jars.isEmpty()) {
+			harness.jars.add(new File("samples/app/target/app-0.0.1-SNAPSHOT.jar"));
+			harness.jars.add(new File("samples/simple/target/simple-0.0.1-SNAPSHOT.jar"));
+		}
+		harness.run();
+	}
+
+	private static String value(String arg) {
+		return arg.substring(arg.indexOf("=") + 1);
+	}
+
+	public void run() throws Exception {
+		for (File jar : this.jars) {
+			if (!jar.exists()) {
+				throw new IllegalStateException("No such jar: " + jar
+						+ " (build the samples first)");
+			}
+			String name = jar.getName().replace(".jar", "");
+			File directory = new File(this.work, name);
+			FileSystemUtils.deleteRecursively(directory);
+			File home = settings(new File(directory, "home"));
+			File warm = new File(directory, "warm");
+			File cold = new File(directory, "cold");
+			File report = new File(directory, "report.json");
+			File fat = null;
+			if (this.scenarios.contains("fat")) {
+				fat = fatJar(jar, home, warm, new File(directory, name + "-fat.jar"));
+			}
+			if (this.scenarios.contains("warm") || this.scenarios.contains("dryrun")) {
+				// Untimed run to fill the local repository
+				execute(java(false, thin(jar, home, warm, report, "-Dthin.dryrun=true")),
+						true);
+			}
+			for (String scenario : this.scenarios) {
+				boolean exits = "dryrun".equals(scenario);
+				List<Map<String, Object>> timed = new ArrayList<>();
+				for (int i = 0; i < this.runs; i++) {
+					report.delete();
+					if ("cold".equals(scenario)) {
+						FileSystemUtils.deleteRecursively(cold);
+					}
+					Map<String, Object> result = new LinkedHashMap<>();
+					result.put("app", name);
+					result.put("scenario", scenario);
+					result.put("run", i);
+					result.putAll(execute(command(scenario, jar, home, directory, fat,
+							report, false), exits));
+					if (report.exists()) {
+						Matcher matcher = LAUNCH.matcher(
+								new String(Files.readAllBytes(report.toPath()), UTF_8));
+						if (matcher.find()) {
+							result.put("launchMillis", Long.valueOf(matcher.group(1)));
+						}
+					}
+					System.out.println(result);
+					timed.add(result);
+				}
+				// Untimed run to count the classes
+				report.delete();
+				if ("cold".equals(scenario)) {
+					FileSystemUtils.deleteRecursively(cold);
+				}
+				Object classes = execute(
+						command(scenario, jar, home, directory, fat, report, true), exits)
+								.get("classes");
+				for (Map<String, Object> result : timed) {
+					result.put("classes", classes);
+				}
+				this.results.addAll(timed);
+			}
+		}
+		write();
+	}
+
+	private List<String> command(String scenario, File jar, File home, File directory,
+			File fat, File report, boolean verbose) throws IOException {
+		File cold = new File(directory, "cold");
+		File warm = new File(directory, "warm");
+		if ("cold".equals(scenario)) {
+			return java(verbose, thin(jar, home, cold, report));
+		}
+		if ("warm".equals(scenario)) {
+			return java(verbose, thin(jar, home, warm, report));
+		}
+		if ("dryrun".equals(scenario)) {
+			return java(verbose, thin(jar, home, warm, report, "-Dthin.dryrun=true"));
+		}
+		if ("fat".equals(scenario)) {
+			return java(verbose, "-jar", fat.getAbsolutePath(), "--server.port=0");
+		}
+		throw new IllegalArgumentException("Unknown scenario: " + scenario);
+	}
+
+	private String[] thin(File jar, File home, File root, File report,
+			String... options) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add("-Duser.home=" + home.getAbsolutePath());
+		command.add("-Dthin.root=" + root.getAbsolutePath());
+		command.add("-Dthin.repo=" + this.repository.toURI().toURL());
+		command.add("-Dthin.report=" + report.getAbsolutePath());
+		command.addAll(Arrays.asList(options));
+		command.add("-jar");
+		command.add(jar.getAbsolutePath());
+		command.add("--server.port=0");
+		return command.toArray(new String[0]);
+	}
+
+	private List<String> java(boolean verbose, String... args) {
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin/java")
+				.getAbsolutePath());
+		if (verbose) {
+			command.add("-verbose:class");
+		}
+		command.addAll(this.options);
+		command.addAll(Arrays.asList(args));
+		return command;
+	}
+
+	private Map<String, Object> execute(List<String> command, boolean exits)
+			throws Exception {
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		long start = System.nanoTime();
+		final Process process = builder.start();
+		MemorySampler memory = new MemorySampler(pid(process));
+		memory.start();
+		Thread watchdog = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (!process.waitFor(StartupHarness.this.timeout,
+							TimeUnit.SECONDS)) {
+						process.destroyForcibly();
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		watchdog.setDaemon(true);
+		watchdog.start();
+		Map<String, Object> result = new LinkedHashMap<>();
+		int classes = 0;
+		boolean ready = false;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("[Loaded ") || line.contains("[class,load]")) {
+					classes++;
+				}
+				else if (line.contains(": Starting ")
+						&& !result.containsKey("mainMillis")) {
+					result.put("mainMillis", millis(start));
+				}
+				else if (line.contains(": Started ")) {
+					result.put("readyMillis", millis(start));
+					Matcher matcher = UPTIME.matcher(line);
+					if (matcher.find()) {
+						result.put("readyUptimeMillis", Math
+								.round(Double.valueOf(matcher.group(1)) * 1000));
+					}
+					ready = true;
+					break;
+				}
+			}
+			if (exits) {
+				process.waitFor();
+				result.put("exitMillis", millis(start));
+				result.put("exitCode", process.exitValue());
+			}
+		}
+		finally {
+			memory.finish();
+			process.destroy();
+			process.waitFor();
+		}
+		if (!ready && !exits) {
+			result.put("error", "No application context");
+		}
+		if (classes > 0) {
+			result.put("classes", classes);
+		}
+		if (memory.peak > 0) {
+			result.put("peakRssKb", memory.peak);
+		}
+		return result;
+	}
+
+	private static long millis(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	/**
+	 * Build a fat jar with the same content as a thin jar: the classes of the app (the
+	 * thin jar without its launcher), and the libraries that the thin launcher resolves
+	 * for it.
+	 */
+	private File fatJar(File jar, File home, File root, File fat) throws Exception {
+		String userHome = System.getProperty("user.home");
+		System.setProperty("user.home", home.getAbsolutePath());
+		System.setProperty("grape.root", root.getAbsolutePath());
+		final List<File> libraries = new ArrayList<>();
+		String mainClass;
+		try (JarFile source = new JarFile(jar)) {
+			mainClass = source.getManifest().getMainAttributes().getValue("Start-Class");
+			ArchiveUtils utils = new ArchiveUtils();
+			utils.setProgress(ProgressType.NONE);
+			for (Archive archive : utils.extract(new JarFileArchive(jar), "thin")) {
+				URL url = archive.getUrl();
+				if ("file".equals(url.getProtocol())) {
+					libraries.add(new File(url.toURI()));
+				}
+			}
+		}
+		finally {
+			System.setProperty("user.home", userHome);
+			System.clearProperty("grape.root");
+		}
+		File plain = new File(fat.getParentFile(), "plain.jar");
+		plain(jar, plain);
+		Repackager repackager = new Repackager(plain);
+		repackager.setLayout(new Layouts.Jar());
+		repackager.setMainClass(mainClass);
+		repackager.repackage(fat, new Libraries() {
+			@Override
+			public void doWithLibraries(LibraryCallback callback) throws IOException {
+				for (File library : libraries) {
+					callback.library(new Library(library, LibraryScope.COMPILE));
+				}
+			}
+		});
+		plain.delete();
+		return fat;
+	}
+
+	/**
+	 * Copy the application classes out of a thin jar (without the wrapper and without
+	 * the manifest that marks it as already repackaged).
+	 */
+	private void plain(File jar, File plain) throws IOException {
+		try (JarFile source = new JarFile(jar);
+				JarOutputStream output = new JarOutputStream(
+						new FileOutputStream(plain), manifest())) {
+			for (JarEntry entry : Collections.list(source.entries())) {
+				String name = entry.getName();
+				if (name.startsWith("org/springframework/boot/loader/")
+						|| name.equals("META-INF/MANIFEST.MF")) {
+					continue;
+				}
+				output.putNextEntry(new JarEntry(name));
+				try (InputStream input = source.getInputStream(entry)) {
+					StreamUtils.copy(input, output);
+				}
+				output.closeEntry();
+			}
+		}
+	}
+
+	private Manifest manifest() {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		return manifest;
+	}
+
+	/**
+	 * A Maven settings file that mirrors every remote repository to the local one.
+	 */
+	private File settings(File home) throws IOException {
+		File settings = new File(home, ".m2/settings.xml");
+		settings.getParentFile().mkdirs();
+		FileCopyUtils.copy(("<settings>\n  <mirrors>\n    <mirror>\n"
+				+ "      <id>local</id>\n      <mirrorOf>*</mirrorOf>\n      <url>"
+				+ this.repository.toURI() + "</url>\n    </mirror>\n  </mirrors>\n"
+				+ "</settings>\n").getBytes(UTF_8), settings);
+		return home;
+	}
+
+	private void write() throws IOException {
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("  \"timestamp\": \"").append(String.format("%tFT%<tT%<tz", new Date()))
+				.append("\",\n");
+		json.append("  \"java\": \"").append(System.getProperty("java.version"))
+				.append("\",\n");
+		json.append("  \"runs\": ").append(this.runs).append(",\n");
+		json.append("  \"results\": [");
+		String separator = "\n";
+		for (Map<String, Object> result : this.results) {
+			json.append(separator).append("    {");
+			String comma = "";
+			for (Map.Entry<String, Object> entry : result.entrySet()) {
+				json.append(comma).append("\"").append(entry.getKey()).append("\": ");
+				if (entry.getValue() instanceof Number) {
+					json.append(entry.getValue());
+				}
+				else {
+					json.append("\"").append(entry.getValue()).append("\"");
+				}
+				comma = ", ";
+			}
+			json.append("}");
+			separator = ",\n";
+		}
+		json.append("\n  ]\n}\n");
+		File parent = this.output.getAbsoluteFile().getParentFile();
+		parent.mkdirs();
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.output),
+				UTF_8)) {
+			writer.write(json.toString());
+		}
+		System.out.println("Results written to " + this.output);
+	}
+
+	private static long pid(Process process) {
+		try {
+			// Java 9 and above
+			return (Long) Process.class.getMethod("pid").invoke(process);
+		}
+		catch (Exception e) {
+			// Java 8 on Unix
+		}
+		try {
+			Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return field.getLong(process);
+		}
+		catch (Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Polls the high water mark of the resident memory of a process, as long as it is
+	 * running (only on Linux, otherwise it does nothing).
+	 */
+	private static class MemorySampler extends Thread {
+
+		private final File status;
+
+		private volatile boolean running = true;
+
+		private volatile long peak;
+
+		MemorySampler(long pid) {
+			this.status = new File("/proc/" + pid + "/status");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (this.running && this.status.exists()) {
+				try {
+					for (String line : Files.readAllLines(this.status.toPath(),
+							UTF_8)) {
+						if (line.startsWith("VmHWM:")) {
+							this.peak = Long.valueOf(
+									line.substring(6).replace("kB", "").trim());
+						}
+					}
+					Thread.sleep(20);
+				}
+				catch (IOException e) {
+					// The process has gone
+					return;
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		void finish() throws InterruptedException {
+			this.running = false;
+			interrupt();
+			join();
+		}
+
+	}
+
+}
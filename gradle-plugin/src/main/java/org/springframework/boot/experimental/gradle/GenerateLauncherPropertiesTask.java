@@ -19,51 +19,166 @@ package org.springframework.boot.experimental.gradle;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
 import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.ResolvedDependency;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.tasks.Input;
-import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.TaskExecutionException;
 
+import org.springframework.boot.loader.thin.LockFile;
+
 /**
- * {@link Task} that generates a properties file to be consumed by the thin launcher.
+ * {@link Task} that generates the files to be consumed by the thin launcher: a
+ * <code>META-INF/thin.properties</code> with the resolved artifacts (and
+ * <code>transitive.enabled=false</code>), and a <code>META-INF/thin.lock</code> with the
+ * same artifacts and their checksums, so the launcher does not have to resolve anything.
+ * The artifacts are listed in a defined order: the declared dependencies first, then
+ * their dependencies, one level at a time. Each profile has its own configuration, and
+ * gets its own <code>thin-{profile}.*</code> files. The inputs are the resolved files of
+ * the configurations, so the task is up to date as long as the dependencies do not
+ * change.
  *
  * @author Andy Wilkinson
  */
 public class GenerateLauncherPropertiesTask extends DefaultTask {
 
-	@Input
 	private Configuration configuration;
 
-	@OutputFile
+	private Map<String, Configuration> profiles = new LinkedHashMap<>();
+
 	private File output;
 
 	@TaskAction
 	public void generateLibProperties() {
+		// Profiles that are no longer configured must not leave their files behind
+		getProject().delete(new File(this.output, "META-INF"));
+		write("thin", this.configuration);
+		for (Map.Entry<String, Configuration> profile : this.profiles.entrySet()) {
+			write("thin-" + profile.getKey(), profile.getValue());
+		}
+	}
+
+	private void write(String name, Configuration configuration) {
+		Set<ResolvedArtifact> artifacts = getArtifacts(configuration);
 		Properties properties = new Properties();
 		properties.setProperty("transitive.enabled", "false");
-		for (ResolvedArtifact artifact: this.configuration.getResolvedConfiguration().getResolvedArtifacts()) {
+		List<LockFile.Entry> entries = new ArrayList<>();
+		for (ResolvedArtifact artifact : artifacts) {
 			ModuleVersionIdentifier artifactId = artifact.getModuleVersion().getId();
-			properties.setProperty("dependencies." + artifactId.getName(), artifactId.getGroup()
-					+ ":" + artifactId.getName() + ":" + artifactId.getVersion());
+			String key = artifactId.getGroup() + "." + artifactId.getName();
+			String coordinates = artifactId.getGroup() + ":" + artifactId.getName();
+			String classifier = artifact.getClassifier();
+			if (classifier != null) {
+				key = key + "." + classifier;
+			}
+			if (classifier != null || !"jar".equals(artifact.getExtension())) {
+				coordinates = coordinates + ":" + artifact.getExtension() + ":"
+						+ (classifier == null ? "" : classifier);
+			}
+			properties.setProperty("dependencies." + key,
+					coordinates + ":" + artifactId.getVersion());
+			entries.add(new LockFile.Entry(
+					artifactId.getGroup() + ":" + artifactId.getName() + ":"
+							+ artifact.getExtension()
+							+ (classifier == null ? "" : ":" + classifier) + ":"
+							+ artifactId.getVersion(),
+					LockFile.sha1(artifact.getFile()), null));
+		}
+		File directory = new File(this.output, "META-INF");
+		directory.mkdirs();
+		try (OutputStream stream = new FileOutputStream(
+				new File(directory, name + ".properties"))) {
+			properties.store(stream, null);
+		}
+		catch (IOException ex) {
+			throw new TaskExecutionException(this, ex);
 		}
-		this.output.getParentFile().mkdirs();
-		try (FileOutputStream stream = new FileOutputStream(this.output)) {
-			properties.store(new FileOutputStream(this.output), null);
+		try (OutputStream stream = new FileOutputStream(
+				new File(directory, name + ".lock"))) {
+			new LockFile(entries).write(stream);
 		}
 		catch (IOException ex) {
 			throw new TaskExecutionException(this, ex);
 		}
 	}
 
+	/**
+	 * The artifacts of a configuration, walking the dependency graph breadth first from
+	 * the declared dependencies (unlike the resolved artifacts, which have no defined
+	 * order).
+	 */
+	private Set<ResolvedArtifact> getArtifacts(Configuration configuration) {
+		Set<ResolvedArtifact> artifacts = new LinkedHashSet<>();
+		Set<ResolvedDependency> visited = new HashSet<>();
+		List<ResolvedDependency> level = new ArrayList<>(configuration
+				.getResolvedConfiguration().getFirstLevelModuleDependencies());
+		while (!level.isEmpty()) {
+			List<ResolvedDependency> next = new ArrayList<>();
+			for (ResolvedDependency dependency : level) {
+				if (visited.add(dependency)) {
+					artifacts.addAll(dependency.getModuleArtifacts());
+					next.addAll(dependency.getChildren());
+				}
+			}
+			level = next;
+		}
+		return artifacts;
+	}
+
+	/**
+	 * The resolved files of all the configurations, so that the task is out of date when
+	 * any of them changes.
+	 *
+	 * @return the files
+	 */
+	@InputFiles
+	public FileCollection getConfigurationFiles() {
+		FileCollection files = this.configuration;
+		for (Configuration profile : this.profiles.values()) {
+			files = files.plus(profile);
+		}
+		return files;
+	}
+
+	/**
+	 * The names of the profiles that have their own files.
+	 *
+	 * @return the profile names
+	 */
+	@Input
+	public List<String> getProfileNames() {
+		return new ArrayList<>(this.profiles.keySet());
+	}
+
+	/**
+	 * The directory that the files are written to (under <code>META-INF</code>).
+	 *
+	 * @return the output directory
+	 */
+	@OutputDirectory
+	public File getOutput() {
+		return this.output;
+	}
+
 	/**
 	 * Sets the {@link Configuration} that will be used to resolve the dependencies
-	 * that are listed in {@code lib.proeprties}.
+	 * that are listed in {@code thin.properties} and {@code thin.lock}.
 	 *
 	 * @param configuration the configuration
 	 */
@@ -72,7 +187,20 @@ public class GenerateLauncherPropertiesTask extends DefaultTask {
 	}
 
 	/**
-	 * Sets the location to which the properties file will be written.
+	 * Adds a profile, with a {@link Configuration} that will be used to resolve the
+	 * dependencies that are listed in {@code thin-{profile}.properties} and
+	 * {@code thin-{profile}.lock}. The configuration should include the main
+	 * dependencies as well (e.g. it can extend the {@code runtime} configuration).
+	 *
+	 * @param name the name of the profile
+	 * @param configuration the configuration
+	 */
+	public void profile(String name, Configuration configuration) {
+		this.profiles.put(name, configuration);
+	}
+
+	/**
+	 * Sets the directory to which the files will be written.
 	 *
 	 * @param output the output location
 	 */
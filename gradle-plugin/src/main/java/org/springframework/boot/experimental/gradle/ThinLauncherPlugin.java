@@ -18,6 +18,7 @@ package org.springframework.boot.experimental.gradle;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
 
 import org.gradle.api.Action;
 import org.gradle.api.Plugin;
@@ -37,8 +38,9 @@ import org.gradle.jvm.tasks.Jar;
  * <p>
  * If the Java plugin is applied to the project, a {@link GenerateLauncherPropertiesTask}
  * named {@code generateLibProperties} is added to the project. This task is configured to
- * use the {@code runtime} configuration to generate a {@code META-INF/thin.properties}
- * file in the {@code main} source set's resource output directory.
+ * use the {@code runtime} configuration to generate {@code META-INF/thin.properties}
+ * and {@code META-INF/thin.lock} files in {@code build/thin/resources}, which is added to
+ * the {@code main} source set's output.
  *
  * @author Andy Wilkinson
  */
@@ -109,8 +111,12 @@ public class ThinLauncherPlugin implements Plugin<Project> {
 				.getByName(JavaPlugin.RUNTIME_CONFIGURATION_NAME));
 		SourceSetContainer sourceSets = project.getConvention()
 				.getPlugin(JavaPluginConvention.class).getSourceSets();
-		File resourcesDir = sourceSets.getByName("main").getOutput().getResourcesDir();
-		libPropertiesTask.setOutput(new File(resourcesDir, "META-INF/thin.properties"));
+		// Not the resources directory, so the outputs don't overlap with other tasks
+		File output = new File(project.getBuildDir(), "thin/resources");
+		libPropertiesTask.setOutput(output);
+		sourceSets.getByName("main").getOutput().dir(
+				Collections.<String, Object>singletonMap("builtBy", libPropertiesTask),
+				output);
 		project.getTasks().getByName(JavaPlugin.JAR_TASK_NAME)
 				.dependsOn(libPropertiesTask);
 	}
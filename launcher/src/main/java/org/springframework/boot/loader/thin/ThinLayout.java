@@ -16,7 +16,16 @@
 
 package org.springframework.boot.loader.thin;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
 
 import org.springframework.boot.loader.tools.CustomLoaderLayout;
 import org.springframework.boot.loader.tools.Layout;
@@ -29,6 +38,28 @@ import org.springframework.boot.loader.tools.LoaderClassesWriter;
  */
 public class ThinLayout implements Layout, CustomLoaderLayout {
 
+	/**
+	 * The location of a Maven repository (layout) inside the jar where the launcher is
+	 * embedded, if it is embedded.
+	 */
+	public static final String LAUNCHER_REPOSITORY = "META-INF/loader/repository";
+
+	private static final String LAUNCHER_POM = "META-INF/maven/org.springframework.boot.experimental/spring-boot-thin-launcher/pom.properties";
+
+	private final boolean embedLauncher;
+
+	public ThinLayout() {
+		this(false);
+	}
+
+	/**
+	 * @param embedLauncher flag to say that the launcher jar should be embedded in the
+	 * thin jar, so the wrapper does not need to download it on the first start
+	 */
+	public ThinLayout(boolean embedLauncher) {
+		this.embedLauncher = embedLauncher;
+	}
+
 	@Override
 	public String getLauncherClassName() {
 		return "org.springframework.boot.loader.wrapper.ThinJarWrapper";
@@ -52,6 +83,76 @@ public class ThinLayout implements Layout, CustomLoaderLayout {
 	@Override
 	public void writeLoadedClasses(LoaderClassesWriter writer) throws IOException {
 		writer.writeLoaderClasses("META-INF/loader/spring-boot-thin-wrapper.jar");
+		if (this.embedLauncher) {
+			writeLauncher(writer);
+		}
+	}
+
+	/**
+	 * Copy the jar that this class came from into the thin jar.
+	 */
+	private void writeLauncher(LoaderClassesWriter writer) throws IOException {
+		File launcher;
+		try {
+			launcher = new File(ThinLayout.class.getProtectionDomain().getCodeSource()
+					.getLocation().toURI());
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot locate launcher jar", e);
+		}
+		writeLauncher(writer, launcher);
+	}
+
+	/**
+	 * Copy a launcher jar into the thin jar, at the same path as it would have in a Maven
+	 * repository (plus a <code>.sha1</code>), so the wrapper can use it as a repository.
+	 */
+	void writeLauncher(LoaderClassesWriter writer, File launcher) throws IOException {
+		if (!launcher.isFile()) {
+			throw new IllegalStateException(
+					"Cannot embed launcher because it is not a jar: " + launcher);
+		}
+		Properties pom = new Properties();
+		try (JarFile jar = new JarFile(launcher)) {
+			ZipEntry entry = jar.getEntry(LAUNCHER_POM);
+			if (entry == null) {
+				throw new IllegalStateException(
+						"Cannot embed launcher without Maven coordinates: " + launcher);
+			}
+			try (InputStream input = jar.getInputStream(entry)) {
+				pom.load(input);
+			}
+		}
+		String artifactId = pom.getProperty("artifactId");
+		String version = pom.getProperty("version");
+		String path = LAUNCHER_REPOSITORY + "/"
+				+ pom.getProperty("groupId").replace(".", "/") + "/" + artifactId + "/"
+				+ version + "/" + artifactId + "-" + version + ".jar";
+		writer.writeEntry(path, new FileInputStream(launcher));
+		writer.writeEntry(path + ".sha1",
+				new ByteArrayInputStream(sha1(launcher).getBytes("UTF-8")));
+	}
+
+	private static String sha1(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Cannot create digest", e);
+		}
+		try (InputStream input = new FileInputStream(file)) {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+		StringBuilder builder = new StringBuilder();
+		for (byte value : digest.digest()) {
+			builder.append(String.format("%02x", value));
+		}
+		return builder.toString();
 	}
 
 }
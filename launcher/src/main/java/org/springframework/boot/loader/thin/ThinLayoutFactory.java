@@ -27,9 +27,20 @@ import org.springframework.boot.loader.tools.LayoutFactory;
  */
 public class ThinLayoutFactory implements LayoutFactory {
 
+	private boolean embedLauncher;
+
+	/**
+	 * Flag to say that the launcher jar should be embedded in the thin jar, so that the
+	 * first start does not have to download it (default false).
+	 * @param embedLauncher the flag to set
+	 */
+	public void setEmbedLauncher(boolean embedLauncher) {
+		this.embedLauncher = embedLauncher;
+	}
+
 	@Override
 	public Layout getLayout(File source) {
-		return new ThinLayout();
+		return new ThinLayout(this.embedLauncher);
 	}
 
 }
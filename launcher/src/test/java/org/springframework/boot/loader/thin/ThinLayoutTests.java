@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.boot.loader.tools.LoaderClassesWriter;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ThinLayoutTests {
+
+	private static final String POM = "META-INF/maven/org.springframework.boot.experimental/spring-boot-thin-launcher/pom.properties";
+
+	private File root = new File("target/layout");
+
+	private Writer writer = new Writer();
+
+	@Before
+	public void init() {
+		FileSystemUtils.deleteRecursively(this.root);
+		this.root.mkdirs();
+	}
+
+	@Test
+	public void wrapperOnly() throws Exception {
+		new ThinLayout().writeLoadedClasses(this.writer);
+		assertThat(this.writer.loaderClasses)
+				.isEqualTo("META-INF/loader/spring-boot-thin-wrapper.jar");
+		assertThat(this.writer.entries).isEmpty();
+	}
+
+	@Test
+	public void launcherInRepository() throws Exception {
+		File launcher = jar("launcher.jar",
+				"groupId=org.springframework.boot.experimental\n"
+						+ "artifactId=spring-boot-thin-launcher\nversion=1.0.0\n");
+		new ThinLayout(true).writeLauncher(this.writer, launcher);
+		String path = ThinLayout.LAUNCHER_REPOSITORY
+				+ "/org/springframework/boot/experimental/spring-boot-thin-launcher/"
+				+ "1.0.0/spring-boot-thin-launcher-1.0.0.jar";
+		assertThat(this.writer.entries).containsOnlyKeys(path, path + ".sha1");
+		byte[] bytes = FileCopyUtils.copyToByteArray(launcher);
+		assertThat(this.writer.entries.get(path)).isEqualTo(bytes);
+		assertThat(new String(this.writer.entries.get(path + ".sha1"), "UTF-8"))
+				.isEqualTo(sha1(bytes));
+	}
+
+	@Test
+	public void launcherWithoutPom() throws Exception {
+		File launcher = jar("launcher.jar", null);
+		try {
+			new ThinLayout(true).writeLauncher(this.writer, launcher);
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage()).contains("without Maven coordinates");
+		}
+		assertThat(this.writer.entries).isEmpty();
+	}
+
+	@Test
+	public void launcherNotJar() throws Exception {
+		try {
+			// In the tests the launcher classes are in a directory
+			new ThinLayout(true).writeLoadedClasses(this.writer);
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage()).contains("not a jar");
+		}
+		assertThat(this.writer.entries).isEmpty();
+	}
+
+	private File jar(String name, String pom) throws IOException {
+		File file = new File(this.root, name);
+		try (JarOutputStream output = new JarOutputStream(
+				new FileOutputStream(file))) {
+			output.putNextEntry(new ZipEntry("com/example/Launcher.class"));
+			output.write("launcher".getBytes("UTF-8"));
+			output.closeEntry();
+			if (pom != null) {
+				output.putNextEntry(new ZipEntry(POM));
+				output.write(pom.getBytes("UTF-8"));
+				output.closeEntry();
+			}
+		}
+		return file;
+	}
+
+	private static String sha1(byte[] bytes) throws Exception {
+		StringBuilder builder = new StringBuilder();
+		for (byte value : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+			builder.append(String.format("%02x", value));
+		}
+		return builder.toString();
+	}
+
+	private static class Writer implements LoaderClassesWriter {
+
+		private String loaderClasses;
+
+		private Map<String, byte[]> entries = new LinkedHashMap<>();
+
+		@Override
+		public void writeLoaderClasses() throws IOException {
+			this.loaderClasses = "";
+		}
+
+		@Override
+		public void writeLoaderClasses(String loaderJarResourceName)
+				throws IOException {
+			this.loaderClasses = loaderJarResourceName;
+		}
+
+		@Override
+		public void writeEntry(String name, InputStream inputStream)
+				throws IOException {
+			try {
+				this.entries.put(name, StreamUtils.copyToByteArray(inputStream));
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+
+	}
+
+}
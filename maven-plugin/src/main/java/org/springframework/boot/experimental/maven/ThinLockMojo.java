@@ -0,0 +1,464 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.experimental.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.ModelProblem.Severity;
+import org.apache.maven.model.building.ModelProblemCollector;
+import org.apache.maven.model.building.ModelProblemCollectorRequest;
+import org.apache.maven.model.interpolation.ModelInterpolator;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.ArtifactType;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.Exclusion;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+
+import org.springframework.boot.loader.thin.ArchiveUtils;
+import org.springframework.boot.loader.thin.LockFile;
+import org.springframework.util.StringUtils;
+
+/**
+ * Writes lock files for the thin launcher into <code>META-INF</code> in the build
+ * output, so that they end up in the jar. The dependencies are resolved by the build
+ * itself, with the same repositories, exclusions and dependency management (including
+ * imported BOMs) as the rest of the build, and listed in classpath order with their
+ * checksums. The launcher then only has to download those artifacts, without reading
+ * any poms. The dependencies of the project go in <code>{name}.lock</code>, and for each
+ * of the <code>profiles</code> the dependencies declared in the Maven profile with the
+ * same id are added to them in <code>{name}-{profile}.lock</code>.
+ * <p>
+ * The launcher uses a lock instead of the thin properties in the jar, so the
+ * <code>dependencies.*</code>, <code>exclusions.*</code>, <code>boms.*</code> and
+ * <code>transitive.enabled</code> in <code>META-INF/{name}.properties</code> (and
+ * <code>{name}-{profile}.properties</code>) in the build output are applied on top of
+ * the pom, the same way that the launcher would apply them. I.e.
+ *
+ * <pre>
+ * $ mvn spring-boot-thin:lock package
+ * $ java -jar target/*.jar
+ * </pre>
+ *
+ * @author Dave Syer
+ *
+ */
+@Mojo(name = "lock", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, requiresProject = true, threadSafe = true, requiresDependencyResolution = ResolutionScope.NONE, requiresDependencyCollection = ResolutionScope.NONE)
+public class ThinLockMojo extends AbstractMojo {
+
+	private static final List<String> SCOPES = Arrays.asList("compile", "runtime");
+
+	/**
+	 * The Maven project.
+	 */
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	@Parameter(defaultValue = "${repositorySystemSession}", readonly = true, required = true)
+	private RepositorySystemSession session;
+
+	@Component
+	private RepositorySystem repositorySystem;
+
+	@Component
+	private ModelInterpolator modelInterpolator;
+
+	/**
+	 * Directory to write the lock files to.
+	 */
+	@Parameter(defaultValue = "${project.build.outputDirectory}/META-INF", required = true)
+	private File outputDirectory;
+
+	/**
+	 * The name of the lock files (the launcher looks for <code>thin.lock</code> by
+	 * default).
+	 */
+	@Parameter(defaultValue = "thin")
+	private String name;
+
+	/**
+	 * The ids of Maven profiles in the project whose dependencies should be locked in a
+	 * separate file for the thin profile with the same name.
+	 */
+	@Parameter
+	private List<String> profiles;
+
+	/**
+	 * Skip the execution.
+	 */
+	@Parameter(property = "skip", defaultValue = "false")
+	private boolean skip;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		if (skip) {
+			getLog().info("Skipping exection");
+			return;
+		}
+
+		Map<String, Dependency> managed = getManagedDependencies(
+				this.project.getDependencyManagement());
+		Map<String, Dependency> dependencies = new LinkedHashMap<>();
+		for (org.apache.maven.model.Dependency dependency : this.project
+				.getDependencies()) {
+			add(dependencies, dependency, managed);
+		}
+		write(new File(this.outputDirectory, this.name + ".lock"), dependencies,
+				managed, getThinProperties(""));
+
+		if (this.profiles != null) {
+			for (String id : this.profiles) {
+				Profile profile = interpolate(getProfile(id));
+				Map<String, Dependency> extended = new LinkedHashMap<>(dependencies);
+				Map<String, Dependency> extendedManaged = new LinkedHashMap<>(managed);
+				extendedManaged.putAll(
+						getManagedDependencies(profile.getDependencyManagement()));
+				for (org.apache.maven.model.Dependency dependency : profile
+						.getDependencies()) {
+					add(extended, dependency, extendedManaged);
+				}
+				write(new File(this.outputDirectory, this.name + "-" + id + ".lock"),
+						extended, extendedManaged, getThinProperties("", id));
+			}
+		}
+
+	}
+
+	private void write(File file, Map<String, Dependency> dependencies,
+			Map<String, Dependency> managed, Properties properties)
+			throws MojoExecutionException {
+		getLog().info("Writing: " + file);
+		dependencies = new LinkedHashMap<>(dependencies);
+		managed = new LinkedHashMap<>(managed);
+		merge(dependencies, managed, properties);
+		boolean transitive = "true"
+				.equals(properties.getProperty("transitive.enabled", "true"));
+		LockFile lock = new LockFile(resolve(dependencies, managed, transitive));
+		file.getParentFile().mkdirs();
+		try (OutputStream stream = new FileOutputStream(file)) {
+			lock.write(stream);
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Cannot write lock file " + file, e);
+		}
+	}
+
+	/**
+	 * The thin properties for a profile (or profiles) that are in the build output, in
+	 * the same order as the launcher loads them, so later ones win.
+	 */
+	private Properties getThinProperties(String... profiles)
+			throws MojoExecutionException {
+		Properties properties = new Properties();
+		File directory = new File(this.project.getBuild().getOutputDirectory(),
+				"META-INF");
+		for (String profile : profiles) {
+			File file = new File(directory, this.name
+					+ ("".equals(profile) ? "" : "-" + profile) + ".properties");
+			if (file.exists()) {
+				getLog().info("Merging: " + file);
+				try (InputStream stream = new FileInputStream(file)) {
+					properties.load(stream);
+				}
+				catch (Exception e) {
+					throw new MojoExecutionException("Cannot read " + file, e);
+				}
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Apply the thin properties to the dependencies from the pom: BOMs add to the
+	 * dependency management (but the pom takes precedence), dependencies are added (or
+	 * replace the one from the pom with the same coordinates), and exclusions remove a
+	 * dependency and exclude it from all the others.
+	 */
+	private void merge(Map<String, Dependency> dependencies,
+			Map<String, Dependency> managed, Properties properties)
+			throws MojoExecutionException {
+		for (String key : properties.stringPropertyNames()) {
+			String value = properties.getProperty(key);
+			if (key.startsWith("boms") && StringUtils.hasText(value)) {
+				Dependency bom = ArchiveUtils.parseDependency(value, "pom", "import");
+				for (Dependency dependency : getManagedDependencies(bom, managed)) {
+					String coordinates = key(dependency);
+					if (!managed.containsKey(coordinates)) {
+						managed.put(coordinates, dependency);
+					}
+				}
+			}
+		}
+		Set<Exclusion> exclusions = new LinkedHashSet<>();
+		for (String key : properties.stringPropertyNames()) {
+			String value = properties.getProperty(key);
+			if (!StringUtils.hasText(value)) {
+				continue;
+			}
+			if (key.startsWith("dependencies")) {
+				Dependency dependency = ArchiveUtils.parseDependency(value, "jar",
+						"compile");
+				String coordinates = key(dependency);
+				if (dependency.getArtifact().getVersion().length() == 0) {
+					Dependency defaults = managed.get(coordinates);
+					if (defaults == null) {
+						throw new MojoExecutionException("No version for " + value
+								+ " in " + key + " and it is not managed");
+					}
+					dependency = dependency.setArtifact(dependency.getArtifact()
+							.setVersion(defaults.getArtifact().getVersion()));
+				}
+				dependencies.put(coordinates, dependency);
+			}
+			if (key.startsWith("exclusions")) {
+				Dependency dependency = ArchiveUtils.parseDependency(value, "jar",
+						"compile");
+				String groupId = dependency.getArtifact().getGroupId();
+				String artifactId = dependency.getArtifact().getArtifactId();
+				for (String coordinates : new ArrayList<>(dependencies.keySet())) {
+					if (coordinates.startsWith(groupId + ":" + artifactId + ":")) {
+						dependencies.remove(coordinates);
+					}
+				}
+				exclusions.add(new Exclusion(groupId, artifactId, "*", "*"));
+			}
+		}
+		if (!exclusions.isEmpty()) {
+			for (Map.Entry<String, Dependency> entry : dependencies.entrySet()) {
+				Set<Exclusion> excluded = new LinkedHashSet<>(
+						entry.getValue().getExclusions());
+				excluded.addAll(exclusions);
+				entry.setValue(entry.getValue().setExclusions(excluded));
+			}
+		}
+	}
+
+	private Collection<Dependency> getManagedDependencies(Dependency bom,
+			Map<String, Dependency> managed) throws MojoExecutionException {
+		if (bom.getArtifact().getVersion().length() == 0) {
+			Dependency defaults = managed.get(key(bom));
+			if (defaults == null) {
+				throw new MojoExecutionException(
+						"No version for BOM " + bom.getArtifact());
+			}
+			bom = bom.setArtifact(bom.getArtifact()
+					.setVersion(defaults.getArtifact().getVersion()));
+		}
+		try {
+			return this.repositorySystem
+					.readArtifactDescriptor(this.session,
+							new ArtifactDescriptorRequest(bom.getArtifact(),
+									this.project.getRemoteProjectRepositories(), null))
+					.getManagedDependencies();
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Cannot read BOM " + bom.getArtifact(),
+					e);
+		}
+	}
+
+	/**
+	 * The same key as {@link org.apache.maven.model.Dependency#getManagementKey()}.
+	 */
+	private String key(Dependency dependency) {
+		String key = dependency.getArtifact().getGroupId() + ":"
+				+ dependency.getArtifact().getArtifactId() + ":"
+				+ dependency.getArtifact().getExtension();
+		String classifier = dependency.getArtifact().getClassifier();
+		return classifier.length() > 0 ? key + ":" + classifier : key;
+	}
+
+	private List<LockFile.Entry> resolve(Map<String, Dependency> dependencies,
+			Map<String, Dependency> managed, final boolean transitive)
+			throws MojoExecutionException {
+		CollectRequest collect = new CollectRequest(
+				new ArrayList<>(dependencies.values()),
+				new ArrayList<>(managed.values()),
+				this.project.getRemoteProjectRepositories());
+		DependencyRequest request = new DependencyRequest(collect,
+				new DependencyFilter() {
+					@Override
+					public boolean accept(DependencyNode node,
+							List<DependencyNode> parents) {
+						Dependency dependency = node.getDependency();
+						if (!transitive && parents.size() > 1) {
+							return false;
+						}
+						return dependency == null
+								|| SCOPES.contains(dependency.getScope());
+					}
+				});
+		List<LockFile.Entry> entries = new ArrayList<>();
+		try {
+			for (ArtifactResult result : this.repositorySystem
+					.resolveDependencies(this.session, request).getArtifactResults()) {
+				String repository = null;
+				if (result.getRepository() instanceof RemoteRepository) {
+					repository = result.getRepository().getId();
+				}
+				entries.add(new LockFile.Entry(result.getArtifact().toString(),
+						LockFile.sha1(result.getArtifact().getFile()), repository));
+			}
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Cannot resolve dependencies", e);
+		}
+		return entries;
+	}
+
+	private Profile getProfile(String id) throws MojoExecutionException {
+		for (Profile profile : this.project.getModel().getProfiles()) {
+			if (profile.getId().equals(id)) {
+				return profile;
+			}
+		}
+		throw new MojoExecutionException("No such profile: " + id);
+	}
+
+	private Map<String, Dependency> getManagedDependencies(
+			DependencyManagement management) {
+		Map<String, Dependency> managed = new LinkedHashMap<>();
+		if (management != null) {
+			for (org.apache.maven.model.Dependency dependency : management
+					.getDependencies()) {
+				managed.put(dependency.getManagementKey(), toDependency(dependency,
+						dependency.getVersion(), dependency.getScope()));
+			}
+		}
+		return managed;
+	}
+
+	private void add(Map<String, Dependency> dependencies,
+			org.apache.maven.model.Dependency dependency,
+			Map<String, Dependency> managed) {
+		String key = dependency.getManagementKey();
+		if (dependencies.containsKey(key)) {
+			// Already declared by the project (e.g. the profile is active)
+			return;
+		}
+		// Dependencies in inactive profiles are not managed yet
+		String version = dependency.getVersion();
+		String scope = dependency.getScope();
+		Dependency defaults = managed.get(key);
+		if (defaults != null) {
+			if (version == null) {
+				version = defaults.getArtifact().getVersion();
+			}
+			if (scope == null && defaults.getScope().length() > 0) {
+				scope = defaults.getScope();
+			}
+		}
+		dependencies.put(key,
+				toDependency(dependency, version, scope == null ? "compile" : scope));
+	}
+
+	private Dependency toDependency(org.apache.maven.model.Dependency dependency,
+			String version, String scope) {
+		ArtifactType type = this.session.getArtifactTypeRegistry()
+				.get(dependency.getType());
+		String classifier = dependency.getClassifier();
+		if (classifier == null && type != null) {
+			classifier = type.getClassifier();
+		}
+		String extension = type == null ? dependency.getType() : type.getExtension();
+		List<Exclusion> exclusions = new ArrayList<>();
+		for (org.apache.maven.model.Exclusion exclusion : dependency.getExclusions()) {
+			exclusions.add(new Exclusion(exclusion.getGroupId(),
+					exclusion.getArtifactId(), "*", "*"));
+		}
+		return new Dependency(
+				new DefaultArtifact(dependency.getGroupId(), dependency.getArtifactId(),
+						classifier, extension, version, type),
+				scope, dependency.isOptional(), exclusions);
+	}
+
+	/**
+	 * Dependencies in inactive profiles are not interpolated when the project is built,
+	 * so interpolate a copy of them here, the same way as the rest of the model.
+	 */
+	private Profile interpolate(Profile profile) throws MojoExecutionException {
+		Profile copy = profile.clone();
+		Model model = new Model();
+		model.setGroupId(this.project.getGroupId());
+		model.setArtifactId(this.project.getArtifactId());
+		model.setVersion(this.project.getVersion());
+		model.setProperties(this.project.getProperties());
+		model.setDependencies(copy.getDependencies());
+		model.setDependencyManagement(copy.getDependencyManagement());
+		DefaultModelBuildingRequest request = new DefaultModelBuildingRequest();
+		request.setSystemProperties(properties(this.session.getSystemProperties()));
+		request.setUserProperties(properties(this.session.getUserProperties()));
+		request.setBuildStartTime(new Date());
+		final List<String> errors = new ArrayList<>();
+		this.modelInterpolator.interpolateModel(model, this.project.getBasedir(),
+				request, new ModelProblemCollector() {
+					@Override
+					public void add(ModelProblemCollectorRequest problem) {
+						if (problem.getSeverity() != Severity.WARNING) {
+							errors.add(problem.getMessage());
+						}
+					}
+				});
+		if (!errors.isEmpty()) {
+			throw new MojoExecutionException(
+					"Cannot interpolate profile " + profile.getId() + ": " + errors);
+		}
+		return copy;
+	}
+
+	private Properties properties(Map<String, String> map) {
+		Properties properties = new Properties();
+		properties.putAll(map);
+		return properties;
+	}
+
+}
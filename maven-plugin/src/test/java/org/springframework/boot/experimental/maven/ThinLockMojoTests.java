@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.experimental.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.interpolation.StringSearchModelInterpolator;
+import org.apache.maven.model.path.DefaultPathTranslator;
+import org.apache.maven.model.path.DefaultUrlNormalizer;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.repository.LocalRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.boot.loader.thin.LockFile;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the lock goal on a small project, resolving from a local repository that the
+ * tests write, so nothing is downloaded.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ThinLockMojoTests {
+
+	private File root = new File("target/lock");
+
+	private File output = new File(this.root, "classes");
+
+	@Before
+	public void init() throws Exception {
+		FileSystemUtils.deleteRecursively(this.root);
+		File repository = new File(this.root, "repository");
+		install(repository, "lib", "jar",
+				"<dependencies><dependency><groupId>com.example</groupId>"
+						+ "<artifactId>transitive</artifactId><version>1.0</version>"
+						+ "</dependency></dependencies>");
+		install(repository, "transitive", "jar", "");
+		install(repository, "extra", "jar", "");
+		install(repository, "bom", "pom",
+				"<dependencyManagement><dependencies><dependency>"
+						+ "<groupId>com.example</groupId><artifactId>extra</artifactId>"
+						+ "<version>1.0</version></dependency></dependencies>"
+						+ "</dependencyManagement>");
+	}
+
+	@Test
+	public void pomOnly() throws Exception {
+		assertEquals("[com.example:lib:jar:1.0, com.example:transitive:jar:1.0]",
+				lock().toString());
+	}
+
+	@Test
+	public void thinProperties() throws Exception {
+		properties("thin.properties", "dependencies.extra=com.example:extra\n"
+				+ "boms.example=com.example:bom:1.0\n"
+				+ "exclusions.transitive=com.example:transitive\n");
+		assertEquals("[com.example:lib:jar:1.0, com.example:extra:jar:1.0]",
+				lock().toString());
+	}
+
+	@Test
+	public void notTransitive() throws Exception {
+		properties("thin.properties", "transitive.enabled=false\n");
+		assertEquals("[com.example:lib:jar:1.0]", lock().toString());
+	}
+
+	@Test
+	public void profile() throws Exception {
+		properties("thin-extras.properties", "transitive.enabled=false\n");
+		assertEquals("[com.example:lib:jar:1.0, com.example:extra:jar:1.0]",
+				lock("extras").toString());
+		assertEquals("[com.example:lib:jar:1.0, com.example:transitive:jar:1.0]",
+				lock().toString());
+	}
+
+	private List<String> lock() throws Exception {
+		return lock(null);
+	}
+
+	private List<String> lock(String profile) throws Exception {
+		Model model = new Model();
+		model.setGroupId("com.example");
+		model.setArtifactId("app");
+		model.setVersion("0.0.1-SNAPSHOT");
+		Dependency dependency = new Dependency();
+		dependency.setGroupId("com.example");
+		dependency.setArtifactId("lib");
+		dependency.setVersion("1.0");
+		model.addDependency(dependency);
+		// A profile that is not active, so its dependencies are not interpolated
+		Profile extras = new Profile();
+		extras.setId("extras");
+		Dependency extra = new Dependency();
+		extra.setGroupId("com.example");
+		extra.setArtifactId("extra");
+		extra.setVersion("${extra.version}");
+		extras.addDependency(extra);
+		model.addProfile(extras);
+		model.addProperty("extra.version", "1.0");
+		model.setBuild(new Build());
+		model.getBuild().setOutputDirectory(this.output.getAbsolutePath());
+		MavenProject project = new MavenProject(model);
+		RepositorySystem system = MavenRepositorySystemUtils.newServiceLocator()
+				.getService(RepositorySystem.class);
+		DefaultRepositorySystemSession session = MavenRepositorySystemUtils
+				.newSession();
+		session.setLocalRepositoryManager(system.newLocalRepositoryManager(session,
+				new LocalRepository(new File(this.root, "repository"))));
+		ThinLockMojo mojo = new ThinLockMojo();
+		set(mojo, "project", project);
+		set(mojo, "session", session);
+		set(mojo, "repositorySystem", system);
+		set(mojo, "modelInterpolator",
+				new StringSearchModelInterpolator()
+						.setPathTranslator(new DefaultPathTranslator())
+						.setUrlNormalizer(new DefaultUrlNormalizer()));
+		set(mojo, "outputDirectory", new File(this.output, "META-INF"));
+		set(mojo, "name", "thin");
+		if (profile != null) {
+			set(mojo, "profiles", Arrays.asList(profile));
+		}
+		mojo.execute();
+		List<String> result = new ArrayList<>();
+		try (InputStream stream = new FileInputStream(new File(this.output,
+				"META-INF/thin" + (profile == null ? "" : "-" + profile) + ".lock"))) {
+			for (LockFile.Entry entry : LockFile.read(stream).getEntries()) {
+				result.add(entry.getCoordinates());
+			}
+		}
+		return result;
+	}
+
+	private void properties(String name, String content) throws Exception {
+		File file = new File(this.output, "META-INF/" + name);
+		file.getParentFile().mkdirs();
+		FileCopyUtils.copy(content.getBytes("UTF-8"), file);
+	}
+
+	private void install(File repository, String artifactId, String packaging,
+			String content) throws Exception {
+		File directory = new File(repository, "com/example/" + artifactId + "/1.0");
+		directory.mkdirs();
+		String pom = "<project><modelVersion>4.0.0</modelVersion>"
+				+ "<groupId>com.example</groupId><artifactId>" + artifactId
+				+ "</artifactId><version>1.0</version><packaging>" + packaging
+				+ "</packaging>" + content + "</project>";
+		FileCopyUtils.copy(pom.getBytes("UTF-8"),
+				new File(directory, artifactId + "-1.0.pom"));
+		if ("jar".equals(packaging)) {
+			FileCopyUtils.copy(artifactId.getBytes("UTF-8"),
+					new File(directory, artifactId + "-1.0.jar"));
+		}
+	}
+
+	private void set(Object target, String name, Object value) throws Exception {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+}
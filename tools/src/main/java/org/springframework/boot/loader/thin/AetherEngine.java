@@ -21,22 +21,31 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.collection.DependencyCollectionException;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
 import org.eclipse.aether.graph.Exclusion;
 import org.eclipse.aether.impl.ArtifactDescriptorReader;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.internal.impl.DefaultRepositorySystem;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.repository.RepositoryPolicy;
 import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
@@ -54,6 +63,9 @@ import org.eclipse.aether.transport.http.HttpTransporterFactory;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.util.filter.DependencyFilterUtils;
 import org.eclipse.aether.util.filter.ExclusionsDependencyFilter;
+import org.eclipse.aether.util.graph.visitor.FilteringDependencyVisitor;
+import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator;
+import org.eclipse.aether.util.graph.visitor.TreeDependencyVisitor;
 
 import org.springframework.boot.cli.compiler.grape.DefaultRepositorySystemSessionAutoConfiguration;
 import org.springframework.boot.cli.compiler.grape.DependencyResolutionContext;
@@ -84,6 +96,10 @@ public class AetherEngine {
 
 	private final List<RemoteRepository> repositories;
 
+	private final ArtifactDownloader downloader;
+
+	private LaunchReport report = new LaunchReport();
+
 	public static enum ProgressType {
 		NONE, SUMMARY, DETAILED;
 	}
@@ -103,6 +119,99 @@ public class AetherEngine {
 			addRepository(repository);
 		}
 		this.progressReporter = getProgressReporter(this.session, progress);
+		LaunchEvents.get().instrument(this.session);
+		this.downloader = new ArtifactDownloader(repositorySystem, this.session);
+	}
+
+	private AetherEngine(AetherEngine engine,
+			DependencyResolutionContext resolutionContext) {
+		this.repositorySystem = engine.repositorySystem;
+		this.session = engine.session;
+		this.repositories = engine.repositories;
+		this.progressReporter = engine.progressReporter;
+		this.downloader = engine.downloader;
+		this.report = engine.report;
+		this.resolutionContext = resolutionContext;
+	}
+
+	/**
+	 * @param threads the maximum number of artifacts to resolve concurrently
+	 */
+	public void setThreads(int threads) {
+		this.downloader.setThreads(threads);
+	}
+
+	/**
+	 * @param repositoryThreads the maximum number of concurrent downloads from any one
+	 * repository
+	 */
+	public void setRepositoryThreads(int repositoryThreads) {
+		this.downloader.setRepositoryThreads(repositoryThreads);
+	}
+
+	/**
+	 * @param virtualThreads flag to say that downloads should use virtual threads (if
+	 * the JVM has them)
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.downloader.setVirtualThreads(virtualThreads);
+	}
+
+	/**
+	 * Switch the session offline (or back online). Offline, nothing is downloaded and
+	 * anything that is not in the local repository is reported as missing.
+	 * @param offline the flag to set
+	 */
+	public void setOffline(boolean offline) {
+		this.session.setOffline(offline);
+	}
+
+	/**
+	 * Set the interval between checks for updates to snapshots (the
+	 * <code>maven-metadata.xml</code> used to resolve them, and version ranges in
+	 * repositories that have snapshots). Only the snapshot policy of each repository is
+	 * changed, so releases are checked as the repository says. The time of the last check
+	 * is kept in the local repository, so a process that starts after another one has
+	 * checked does not check again until the interval has passed.
+	 * @param minutes the interval in minutes (0 to check every time)
+	 */
+	public void setMetadataTtl(int minutes) {
+		String update = minutes <= 0 ? RepositoryPolicy.UPDATE_POLICY_ALWAYS
+				: RepositoryPolicy.UPDATE_POLICY_INTERVAL + ":" + minutes;
+		for (int i = 0; i < this.repositories.size(); i++) {
+			RemoteRepository repository = this.repositories.get(i);
+			RepositoryPolicy policy = repository.getPolicy(true);
+			if (policy.isEnabled()) {
+				this.repositories.set(i, new RemoteRepository.Builder(repository)
+						.setSnapshotPolicy(new RepositoryPolicy(true, update,
+								policy.getChecksumPolicy()))
+						.build());
+			}
+		}
+	}
+
+	/**
+	 * A report to record timings and repository statistics in. Set it before creating
+	 * any engines with {@link #withContext(DependencyResolutionContext)}.
+	 * @param report the report to set
+	 */
+	public void setReport(LaunchReport report) {
+		this.report = report;
+		report.instrument(this.session);
+	}
+
+	LaunchReport getReport() {
+		return this.report;
+	}
+
+	/**
+	 * Create an engine that shares the repository session (and therefore its caches and
+	 * progress reporting) with this one, but manages dependency versions independently.
+	 * @param resolutionContext the dependency management for the new engine
+	 * @return a new engine
+	 */
+	public AetherEngine withContext(DependencyResolutionContext resolutionContext) {
+		return new AetherEngine(this, resolutionContext);
 	}
 
 	private ProgressReporter getProgressReporter(DefaultRepositorySystemSession session,
@@ -125,10 +234,6 @@ public class AetherEngine {
 		return dependencies;
 	}
 
-	private List<File> getFiles(DependencyResult dependencyResult) {
-		return getFiles(dependencyResult.getArtifactResults());
-	}
-
 	protected void addRepository(RemoteRepository repository) {
 		if (this.repositories.contains(repository)) {
 			return;
@@ -180,25 +285,147 @@ public class AetherEngine {
 
 	public List<File> resolve(List<Dependency> dependencies, boolean transitive)
 			throws ArtifactResolutionException {
+		return getFiles(resolveArtifacts(dependencies, transitive));
+	}
+
+	public List<ArtifactResult> resolveArtifacts(List<Dependency> dependencies,
+			boolean transitive) throws ArtifactResolutionException {
 		if (transitive) {
 			return resolveTransitive(dependencies);
 		}
 		return resolveNonTransitive(dependencies);
 	}
 
-	private List<File> resolveNonTransitive(List<Dependency> dependencies) {
+	/**
+	 * Resolve exactly the artifacts listed in a lock file, without reading any poms or
+	 * computing transitive dependencies. The checksums in the lock replace the remote
+	 * checksum files, and are verified for any artifact that has to be downloaded.
+	 * @param lock the lock file
+	 * @return the resolved files in the same order as the lock
+	 */
+	public List<File> resolve(LockFile lock) {
+		LocalRepositoryManager local = this.session.getLocalRepositoryManager();
+		List<ArtifactRequest> requests = new ArrayList<>();
+		Map<ArtifactRequest, LockFile.Entry> downloads = new LinkedHashMap<>();
+		for (LockFile.Entry entry : lock.getEntries()) {
+			Artifact artifact = new DefaultArtifact(entry.getCoordinates());
+			ArtifactRequest request = new ArtifactRequest(artifact,
+					getLockedRepositories(entry.getRepository()), null);
+			requests.add(request);
+			if (!new File(local.getRepository().getBasedir(),
+					local.getPathForLocalArtifact(artifact)).exists()) {
+				downloads.put(request, entry);
+			}
+		}
+		List<ArtifactResult> results;
+		try {
+			results = resolveArtifactRequests(requests);
+		}
+		catch (Exception ex) {
+			throw failure(ex);
+		}
+		finally {
+			finished();
+		}
+		for (ArtifactResult result : results) {
+			LockFile.Entry entry = downloads.get(result.getRequest());
+			if (entry != null && entry.getSha1() != null) {
+				File file = result.getArtifact().getFile();
+				String sha1 = LockFile.sha1(file);
+				if (!sha1.equalsIgnoreCase(entry.getSha1())) {
+					file.delete();
+					throw new IllegalStateException("Checksum mismatch for " + entry
+							+ ": expected " + entry.getSha1() + " but found " + sha1);
+				}
+			}
+		}
+		return getFiles(results);
+	}
+
+	/**
+	 * Offline there is no point reporting the first failure and its stack trace: the
+	 * user needs the complete list of the artifacts that are missing from the local
+	 * repository.
+	 */
+	private RuntimeException failure(Exception ex) {
+		if (this.session.isOffline()) {
+			Set<String> missing = new LinkedHashSet<>();
+			if (ex instanceof ArtifactResolutionException) {
+				for (ArtifactResult result : ((ArtifactResolutionException) ex)
+						.getResults()) {
+					if (!result.isResolved()) {
+						missing.add(result.getRequest().getArtifact().toString());
+					}
+				}
+			}
+			if (ex instanceof DependencyCollectionException) {
+				for (Exception exception : ((DependencyCollectionException) ex)
+						.getResult().getExceptions()) {
+					missing.add(exception.getMessage());
+				}
+			}
+			if (!missing.isEmpty()) {
+				StringBuilder message = new StringBuilder(
+						"Cannot resolve offline. Missing from local repository "
+								+ this.session.getLocalRepository().getBasedir() + ":");
+				for (String artifact : missing) {
+					message.append("\n  ").append(artifact);
+				}
+				return new IllegalStateException(message.toString(), ex);
+			}
+		}
+		return new DependencyResolutionFailedException(ex);
+	}
+
+	private void finished() {
+		this.progressReporter.finished();
+	}
+
+	private List<RemoteRepository> getLockedRepositories(String id) {
+		List<RemoteRepository> list = new ArrayList<>();
+		for (RemoteRepository repository : this.repositories) {
+			// The lock has the checksums so there's no need to download them
+			RemoteRepository.Builder builder = new RemoteRepository.Builder(repository);
+			builder.setReleasePolicy(ignoreChecksums(repository.getPolicy(false)));
+			builder.setSnapshotPolicy(ignoreChecksums(repository.getPolicy(true)));
+			if (repository.getId().equals(id)) {
+				list.add(0, builder.build());
+			}
+			else {
+				list.add(builder.build());
+			}
+		}
+		return list;
+	}
+
+	private RepositoryPolicy ignoreChecksums(RepositoryPolicy policy) {
+		return new RepositoryPolicy(policy.isEnabled(), policy.getUpdatePolicy(),
+				RepositoryPolicy.CHECKSUM_POLICY_IGNORE);
+	}
+
+	private List<ArtifactResult> resolveNonTransitive(List<Dependency> dependencies) {
 		try {
 			List<ArtifactRequest> artifactRequests = getArtifactRequests(dependencies);
-			List<ArtifactResult> result = this.repositorySystem
-					.resolveArtifacts(this.session, artifactRequests);
+			List<ArtifactResult> result = resolveArtifactRequests(artifactRequests);
 			this.resolutionContext.addManagedDependencies(dependencies);
-			return getFiles(result);
+			return result;
 		}
 		catch (Exception ex) {
-			throw new DependencyResolutionFailedException(ex);
+			throw failure(ex);
+		}
+		finally {
+			finished();
+		}
+	}
+
+	private List<ArtifactResult> resolveArtifactRequests(List<ArtifactRequest> requests)
+			throws ArtifactResolutionException {
+		LaunchReport.Timer timer = this.report.start(LaunchReport.DOWNLOAD);
+		try {
+			return this.downloader.resolve(requests);
 		}
 		finally {
-			this.progressReporter.finished();
+			timer.stop();
 		}
 	}
 
@@ -225,22 +452,56 @@ public class AetherEngine {
 		try {
 			CollectRequest collectRequest = getCollectRequest(dependencies);
 			DependencyRequest dependencyRequest = getDependencyRequest(collectRequest);
-			DependencyResult result = this.repositorySystem
-					.resolveDependencies(this.session, dependencyRequest);
+			DependencyResult result = resolveDependencies(dependencyRequest);
 			addManagedDependencies(result);
 			return result;
 		}
 		catch (Exception ex) {
-			throw new DependencyResolutionFailedException(ex);
+			throw failure(ex);
+		}
+		finally {
+			finished();
+		}
+	}
+
+	/**
+	 * Collect the dependency graph and then download all the artifacts in it together
+	 * (the repository system would resolve them in batches per repository).
+	 */
+	private DependencyResult resolveDependencies(DependencyRequest request)
+			throws DependencyCollectionException, ArtifactResolutionException {
+		LaunchReport.Timer timer = this.report.start(LaunchReport.COLLECT);
+		CollectResult collected;
+		try {
+			collected = this.repositorySystem.collectDependencies(this.session,
+					request.getCollectRequest());
 		}
 		finally {
-			this.progressReporter.finished();
+			timer.stop();
+		}
+		DependencyNode root = collected.getRoot();
+		PreorderNodeListGenerator nodes = new PreorderNodeListGenerator();
+		root.accept(new TreeDependencyVisitor(
+				new FilteringDependencyVisitor(nodes, request.getFilter())));
+		List<ArtifactRequest> requests = new ArrayList<>();
+		for (DependencyNode node : nodes.getNodes()) {
+			if (node.getDependency() != null) {
+				requests.add(new ArtifactRequest(node));
+			}
+		}
+		List<ArtifactResult> results = resolveArtifactRequests(requests);
+		for (ArtifactResult result : results) {
+			result.getRequest().getDependencyNode().setArtifact(result.getArtifact());
 		}
+		DependencyResult result = new DependencyResult(request);
+		result.setRoot(root);
+		result.setArtifactResults(results);
+		return result;
 	}
 
-	private List<File> resolveTransitive(List<Dependency> dependencies)
+	private List<ArtifactResult> resolveTransitive(List<Dependency> dependencies)
 			throws ArtifactResolutionException {
-		return getFiles(resolveDependencies(dependencies));
+		return resolveDependencies(dependencies).getArtifactResults();
 	}
 
 	public void addDependencyManagement(List<Dependency> dependencies) {
@@ -248,23 +509,69 @@ public class AetherEngine {
 	}
 
 	public void addDependencyManagementBoms(List<Dependency> boms) {
-		for (Dependency bom : boms) {
-			try {
+		// Read the BOMs concurrently, but add them in order, so the result is the same as
+		// if they were read one at a time
+		List<Callable<List<Dependency>>> tasks = new ArrayList<>();
+		for (final Dependency bom : boms) {
+			tasks.add(new Callable<List<Dependency>>() {
+				@Override
+				public List<Dependency> call() throws Exception {
+					return getManagedDependencies(bom);
+				}
+			});
+		}
+		List<List<Dependency>> results;
+		LaunchReport.Timer timer = this.report.start(LaunchReport.BOM);
+		try {
+			results = this.downloader.invokeAll(tasks);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Cannot read BOMs", e.getCause());
+		}
+		finally {
+			timer.stop();
+		}
+		for (List<Dependency> managedDependencies : results) {
+			// TODO: accept non-bom dependencies for direct management
+			resolutionContext.addManagedDependencies(managedDependencies);
+		}
+	}
+
+	private List<Dependency> getManagedDependencies(Dependency bom) {
+		try {
+			Artifact artifact = bom.getArtifact();
+			File pom = null;
+			if (StringUtils.hasText(artifact.getVersion()) && !artifact.isSnapshot()) {
+				// Released BOMs never change, so their managed dependencies can be
+				// indexed
+				LocalRepositoryManager local = this.session.getLocalRepositoryManager();
+				pom = new File(local.getRepository().getBasedir(),
+						local.getPathForLocalArtifact(new DefaultArtifact(
+								artifact.getGroupId(), artifact.getArtifactId(), "pom",
+								artifact.getVersion())));
+			}
+			List<Dependency> managedDependencies = pom == null ? null
+					: ManagedDependencyIndex.read(artifact, pom);
+			if (managedDependencies == null) {
 				ArtifactDescriptorReader resolver = AetherEngine.getServiceLocator()
 						.getService(ArtifactDescriptorReader.class);
 				ArtifactDescriptorRequest request = new ArtifactDescriptorRequest(
-						bom.getArtifact(), repositories, null);
+						artifact, repositories, null);
 				ArtifactDescriptorResult descriptor = resolver
 						.readArtifactDescriptor(session, request);
-				List<Dependency> managedDependencies = descriptor
-						.getManagedDependencies();
-				// TODO: accept non-bom dependencies for direct management
-				resolutionContext.addManagedDependencies(managedDependencies);
-			}
-			catch (Exception ex) {
-				throw new IllegalStateException("Failed to build model for '" + bom
-						+ "'. Is it a valid Maven bom?", ex);
+				managedDependencies = descriptor.getManagedDependencies();
+				if (pom != null && pom.exists()) {
+					ManagedDependencyIndex.write(artifact, pom, managedDependencies);
+				}
 			}
+			return managedDependencies;
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Failed to build model for '" + bom
+					+ "'. Is it a valid Maven bom?", ex);
 		}
 	}
 
@@ -358,6 +665,12 @@ public class AetherEngine {
 		new DefaultRepositorySystemSessionAutoConfiguration()
 				.apply(repositorySystemSession, repositorySystem);
 
+		// Coalesce descriptor reads and artifact lookups for engines sharing the session
+		repositorySystemSession.setCache(new DefaultRepositoryCache());
+		repositorySystemSession.setLocalRepositoryManager(
+				new ThinLocalRepositoryManager(repositorySystemSession,
+						repositorySystemSession.getLocalRepository().getBasedir()));
+
 		return new AetherEngine(repositorySystem, repositorySystemSession,
 				createRepositories(repositoryConfigurations), dependencyResolutionContext,
 				progress);
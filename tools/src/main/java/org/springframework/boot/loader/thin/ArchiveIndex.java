@@ -0,0 +1,254 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.jar.JarFile;
+
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.boot.loader.archive.Archive;
+import org.springframework.boot.loader.archive.Archive.Entry;
+
+/**
+ * The entries of an archive that the launcher needs to know about, collected in a single
+ * pass over the archive: the locations of Maven poms, the files at the top level and in
+ * <code>META-INF</code> (where the thin properties and lock files live), and the classes
+ * that might have a main method. Looking things up in the index replaces a wildcard scan
+ * of the whole archive (or a separate lookup per file). There is one index per archive
+ * instance, and the main class is only computed once.
+ *
+ * @author Dave Syer
+ *
+ */
+class ArchiveIndex {
+
+	private static final String MAVEN = "META-INF/maven/";
+
+	private static final String POM = "pom.xml";
+
+	private static final String MAIN_METHOD = "([Ljava/lang/String;)V";
+
+	private static final Map<Archive, ArchiveIndex> indexes = new WeakHashMap<>();
+
+	private final String url;
+
+	private final Set<String> resources = new HashSet<>();
+
+	private final List<String> poms = new ArrayList<>();
+
+	private final List<String> classes = new ArrayList<>();
+
+	private String mainClass;
+
+	private ArchiveIndex(String url, Iterable<Entry> entries) {
+		this.url = url;
+		for (Entry entry : entries) {
+			if (entry.isDirectory()) {
+				continue;
+			}
+			String name = entry.getName();
+			if (name.endsWith(".class")) {
+				this.classes.add(name);
+			}
+			else if (name.endsWith("/" + POM)
+					&& (name.startsWith(MAVEN) || name.contains("/" + MAVEN))) {
+				this.poms.add(name);
+			}
+			if (name.indexOf('/') < 0 || (name.startsWith("META-INF/")
+					&& name.indexOf('/', "META-INF/".length()) < 0)) {
+				this.resources.add(name);
+			}
+		}
+	}
+
+	/**
+	 * The index for an archive, computed the first time it is needed.
+	 * @param archive the archive to index
+	 * @return the index
+	 */
+	public static ArchiveIndex get(Archive archive) {
+		synchronized (indexes) {
+			ArchiveIndex index = indexes.get(archive);
+			if (index == null) {
+				try {
+					index = new ArchiveIndex(archive.getUrl().toString(), archive);
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("Cannot index archive: " + archive,
+							e);
+				}
+				indexes.put(archive, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * @param path a path relative to the root of the archive
+	 * @return true if there is a file with that path at the top level or in
+	 * <code>META-INF</code>
+	 */
+	public boolean contains(String path) {
+		return this.resources.contains(path);
+	}
+
+	/**
+	 * Find the pom for the archive. A pom at the top level wins, and then the ones in
+	 * <code>META-INF/maven</code>, preferring the ones in a directory with the same name
+	 * as the artifact, and then the ones in a Spring Boot fat jar.
+	 * @param artifactId the artifact id (if known)
+	 * @return the path of the pom or null if there isn't one
+	 */
+	public String getPom(String artifactId) {
+		if (this.resources.contains(POM)) {
+			return POM;
+		}
+		if (artifactId != null) {
+			String suffix = "/" + artifactId + "/" + POM;
+			String pom = findPom(MAVEN, suffix);
+			if (pom != null) {
+				return pom;
+			}
+			pom = findPom("BOOT-INF/classes/" + MAVEN, suffix);
+			if (pom != null) {
+				return pom;
+			}
+		}
+		// Someone renamed the jar, so we don't know the artifactid
+		String pom = findPom(MAVEN, "/" + POM);
+		if (pom != null) {
+			return pom;
+		}
+		// Last chance
+		return this.poms.isEmpty() ? null : this.poms.get(0);
+	}
+
+	/**
+	 * Find the single class with a <code>public static void main(String[])</code> method.
+	 * Only the classes in the index are inspected, and the result is remembered.
+	 * @return the main class name
+	 * @throws IOException if a class cannot be read
+	 * @throws IllegalStateException if there is no main class or more than one
+	 */
+	public synchronized String getMainClass() throws IOException {
+		if (this.mainClass == null) {
+			this.mainClass = findMainClass();
+		}
+		return this.mainClass;
+	}
+
+	private String findPom(String prefix, String suffix) {
+		for (String pom : this.poms) {
+			if (pom.startsWith(prefix) && pom.endsWith(suffix)) {
+				return pom;
+			}
+		}
+		return null;
+	}
+
+	private String findMainClass() throws IOException {
+		Set<String> candidates = new TreeSet<>();
+		JarFile jar = openJarFile();
+		try {
+			for (String name : this.classes) {
+				try (InputStream stream = jar != null
+						? jar.getInputStream(jar.getEntry(name))
+						: new URL(new URL(this.url), name).openStream()) {
+					if (hasMainMethod(stream)) {
+						candidates.add(name
+								.substring(0, name.length() - ".class".length())
+								.replace('/', '.'));
+					}
+				}
+			}
+		}
+		finally {
+			if (jar != null) {
+				jar.close();
+			}
+		}
+		if (candidates.size() != 1) {
+			throw new IllegalStateException(candidates.isEmpty()
+					? "Unable to find a main class in " + this.url
+					: "Unable to find a single main class from the following candidates "
+							+ candidates);
+		}
+		return candidates.iterator().next();
+	}
+
+	/**
+	 * A plain jar file (not nested) is opened once for all the classes, instead of once
+	 * per class through its URL.
+	 */
+	private JarFile openJarFile() throws IOException {
+		if (this.url.startsWith("jar:file:") && this.url.endsWith("!/")
+				&& this.url.indexOf("!/") == this.url.length() - 2) {
+			try {
+				return new JarFile(new File(new URI(this.url.substring(
+						"jar:".length(), this.url.length() - "!/".length()))));
+			}
+			catch (URISyntaxException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static boolean hasMainMethod(InputStream stream) throws IOException {
+		MainMethodVisitor visitor = new MainMethodVisitor();
+		new ClassReader(stream).accept(visitor,
+				ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return visitor.found;
+	}
+
+	private static class MainMethodVisitor extends ClassVisitor {
+
+		private boolean found;
+
+		MainMethodVisitor() {
+			super(Opcodes.ASM5);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc,
+				String signature, String[] exceptions) {
+			if ("main".equals(name) && MAIN_METHOD.equals(desc)
+					&& (access & Opcodes.ACC_PUBLIC) != 0
+					&& (access & Opcodes.ACC_STATIC) != 0) {
+				this.found = true;
+			}
+			return null;
+		}
+
+	}
+
+}
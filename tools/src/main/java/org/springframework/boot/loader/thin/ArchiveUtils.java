@@ -18,12 +18,17 @@ package org.springframework.boot.loader.thin;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -31,13 +36,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
+import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.graph.Exclusion;
+import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
 
 import org.springframework.boot.cli.compiler.RepositoryConfigurationFactory;
 import org.springframework.boot.cli.compiler.grape.DependencyResolutionContext;
@@ -47,14 +54,13 @@ import org.springframework.boot.loader.archive.ExplodedArchive;
 import org.springframework.boot.loader.archive.JarFileArchive;
 import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
 import org.springframework.boot.loader.tools.LogbackInitializer;
-import org.springframework.boot.loader.tools.MainClassFinder;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.UrlResource;
 import org.springframework.core.io.support.PropertiesLoaderUtils;
-import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.util.FileCopyUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -64,9 +70,19 @@ import org.springframework.util.StringUtils;
 public class ArchiveUtils {
 
 	private static final String DEFAULT_BOM = "org.springframework.boot:spring-boot-dependencies:1.4.2.RELEASE";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
 	private ProgressType progress = ProgressType.SUMMARY;
 	private ResourceLoader resources = new DefaultResourceLoader();
 	private String[] locations = new String[] { "classpath:/", "file:." };
+	private ClasspathCache cache;
+	private PomLoader.ModelCache poms = new PomLoader.ModelCache();
+	private AetherEngine engine;
+	private int threads = ArtifactDownloader.DEFAULT_THREADS;
+	private int repositoryThreads = ArtifactDownloader.DEFAULT_REPOSITORY_THREADS;
+	private boolean virtualThreads;
+	private boolean offline;
+	private Integer metadataTtl;
+	private LaunchReport report = new LaunchReport();
 
 	static {
 		LogbackInitializer.initialize();
@@ -78,19 +94,145 @@ public class ArchiveUtils {
 	 */
 	public void setProgress(ProgressType progress) {
 		this.progress = progress;
+		this.engine = null;
+	}
+
+	/**
+	 * The maximum number of artifacts to download concurrently (default 10).
+	 * @param threads the number of threads to set
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+		this.engine = null;
+	}
+
+	/**
+	 * The maximum number of concurrent downloads from any one repository (default 5).
+	 * @param repositoryThreads the number of threads to set
+	 */
+	public void setRepositoryThreads(int repositoryThreads) {
+		this.repositoryThreads = repositoryThreads;
+		this.engine = null;
+	}
+
+	/**
+	 * Flag to say that downloads should run in virtual threads, if the JVM supports
+	 * them.
+	 * @param virtualThreads the flag to set
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		this.engine = null;
+	}
+
+	/**
+	 * Flag to say that no remote repositories should be used. Everything has to be in
+	 * the local repository already, and if it isn't the missing artifacts are all
+	 * reported together.
+	 * @param offline the flag to set
+	 */
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+		this.engine = null;
+	}
+
+	/**
+	 * The number of minutes between checks for updates to snapshots and version ranges
+	 * (by default the repository update policy applies, usually daily).
+	 * @param metadataTtl the interval in minutes, or null for the default
+	 */
+	public void setMetadataTtl(Integer metadataTtl) {
+		this.metadataTtl = metadataTtl;
+		this.engine = null;
+	}
+
+	/**
+	 * A report to record timings and cache statistics in.
+	 * @param report the report to set
+	 */
+	public void setReport(LaunchReport report) {
+		this.report = report;
+		this.engine = null;
 	}
 
 	public void setLocations(String... locations) {
 		this.locations = locations;
 	}
 
+	public String[] getLocations() {
+		return this.locations;
+	}
+
+	/**
+	 * A cache for resolved classpaths. If set then {@link #combine} consults it before
+	 * resolving anything, and stores the result afterwards.
+	 * @param cache the cache to set
+	 */
+	public void setCache(ClasspathCache cache) {
+		this.cache = cache;
+	}
+
 	public static Archive getArchive(Class<?> cls) {
 		URL location = cls.getProtectionDomain().getCodeSource().getLocation();
 		return getArchive(location.toString());
 	}
 
 	public static Archive getArchive(String path) {
-		File file = new File(findArchive(path));
+		return getArchive(path, false);
+	}
+
+	/**
+	 * Locate an archive from a path or <code>maven:</code> coordinates.
+	 * @param path the path or coordinates of the archive
+	 * @param offline flag to say that coordinates should only be resolved from the local
+	 * repository
+	 * @return the archive
+	 */
+	public static Archive getArchive(String path, boolean offline) {
+		AetherEngine engine = null;
+		if (offline && path != null && path.startsWith("maven:")) {
+			engine = AetherEngine.create(
+					Collections.<RepositoryConfiguration>emptyList(),
+					new DependencyResolutionContext());
+			engine.setOffline(true);
+		}
+		return getArchive(path, engine);
+	}
+
+	/**
+	 * Locate an archive, like {@link #getArchive(String)}, but resolve
+	 * <code>maven:</code> coordinates with the same engine (and repository session) as
+	 * the dependencies.
+	 * @param path the path or coordinates of the archive
+	 * @return the archive
+	 */
+	public Archive resolveArchive(String path) {
+		LaunchReport.Timer timer = this.report.start(LaunchReport.ARCHIVE);
+		try {
+			return getArchive(path, getEngine());
+		}
+		finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Locate an archive like {@link #resolveArchive(String)}, without opening it.
+	 * @param path the path or co-ordinates of the archive
+	 * @return the archive file (or directory)
+	 */
+	File resolveArchiveFile(String path) {
+		LaunchReport.Timer timer = this.report.start(LaunchReport.ARCHIVE);
+		try {
+			return new File(findArchive(path, getEngine()));
+		}
+		finally {
+			timer.stop();
+		}
+	}
+
+	private static Archive getArchive(String path, AetherEngine engine) {
+		File file = new File(findArchive(path, engine));
 		if (file.isDirectory()) {
 			return new ExplodedArchive(file);
 		}
@@ -129,21 +271,15 @@ public class ArchiveUtils {
 		catch (Exception e) {
 		}
 		try {
-			File root = getArchiveRoot(archive);
-			if (archive instanceof ExplodedArchive) {
-				return MainClassFinder.findSingleMainClass(root);
-			}
-			else {
-				return MainClassFinder.findSingleMainClass(new JarFile(root), "");
-			}
+			return ArchiveIndex.get(archive).getMainClass();
 		}
 		catch (Exception e) {
 			throw new IllegalStateException("Cannot locate main class in " + archive, e);
 		}
 	}
 
-	private static URI findArchive(String path) {
-		URI archive = findPath(path);
+	private static URI findArchive(String path, AetherEngine engine) {
+		URI archive = findPath(path, engine);
 		if (archive != null) {
 			try {
 				return jarFile(archive.toURL()).toURI();
@@ -164,7 +300,7 @@ public class ArchiveUtils {
 		return dir.toURI();
 	}
 
-	private static URI findPath(String path) {
+	private static URI findPath(String path, AetherEngine engine) {
 		if (path == null) {
 			return null;
 		}
@@ -172,9 +308,15 @@ public class ArchiveUtils {
 			// Resolving an explicit external archive
 			String coordinates = path.replaceFirst("maven:\\/*", "");
 			DependencyResolutionContext context = new DependencyResolutionContext();
-			AetherEngine engine = AetherEngine.create(
-					RepositoryConfigurationFactory.createDefaultRepositoryConfiguration(),
-					context);
+			if (engine == null) {
+				engine = AetherEngine.create(
+						RepositoryConfigurationFactory
+								.createDefaultRepositoryConfiguration(),
+						context);
+			}
+			else {
+				engine = engine.withContext(context);
+			}
 			try {
 				List<File> resolved = engine.resolve(Arrays.asList(
 						new Dependency(new DefaultArtifact(coordinates), "runtime")),
@@ -239,40 +381,145 @@ public class ArchiveUtils {
 
 	public List<Archive> subtract(Archive parent, Archive child, String name,
 			String... profiles) {
+		return archives(subtractFiles(parent, child, name, profiles));
+	}
 
+	public List<Archive> extract(Archive root, String name, String... profiles) {
+		return archives(extractFiles(root, name, profiles));
+	}
+
+	List<File> subtractFiles(Archive parent, Archive child, String name,
+			String... profiles) {
 		ArchiveDependencies parents = new ArchiveDependencies(parent, name, profiles);
-		List<File> resolved = parents.resolve();
+		return subtractFiles(parents, parents.resolveArtifacts(),
+				new ArchiveDependencies(child, name, profiles));
+	}
+
+	/**
+	 * The libraries of the child that are not in the parent. A library that the parent
+	 * has in a different version is left out as well: the parent comes first in the
+	 * classpath (or is the parent class loader), so its version would be used anyway,
+	 * and having both would mix resources from the two versions.
+	 */
+	private List<File> subtractFiles(ArchiveDependencies parents,
+			List<ArtifactResult> resolved, ArchiveDependencies childs) {
 
-		ArchiveDependencies childs = new ArchiveDependencies(child, name, profiles);
 		childs.addBoms(parents.getBoms());
 		childs.mergeExclusions(parents.getDependencies());
+		Map<String, String> versions = new LinkedHashMap<>();
+		for (ArtifactResult result : resolved) {
+			versions.put(coordinates(result.getArtifact()),
+					result.getArtifact().getVersion());
+		}
 		ArrayList<File> result = new ArrayList<>();
-		for (File file : childs.resolve()) {
-			if (!resolved.contains(file)) {
-				result.add(file);
+		for (ArtifactResult child : childs.resolveArtifacts()) {
+			Artifact artifact = child.getArtifact();
+			String version = versions.get(coordinates(artifact));
+			if (version == null) {
+				result.add(artifact.getFile());
+			}
+			else if (!version.equals(artifact.getVersion())
+					&& this.progress != ProgressType.NONE) {
+				System.out.println("Using " + coordinates(artifact) + ":" + version
+						+ " from the parent instead of " + artifact.getVersion());
 			}
 		}
-		return archives(result);
+		return result;
 
 	}
 
-	public List<Archive> extract(Archive root, String name, String... profiles) {
+	private static String coordinates(Artifact artifact) {
+		String coordinates = artifact.getGroupId() + ":" + artifact.getArtifactId();
+		if (!"jar".equals(artifact.getExtension())
+				|| artifact.getClassifier().length() > 0) {
+			coordinates = coordinates + ":" + artifact.getExtension();
+		}
+		if (artifact.getClassifier().length() > 0) {
+			coordinates = coordinates + ":" + artifact.getClassifier();
+		}
+		return coordinates;
+	}
 
-		ArchiveDependencies computed = new ArchiveDependencies(root, name, profiles);
+	private List<File> extractFiles(Archive root, String name, String... profiles) {
+		return extractFiles(new ArchiveDependencies(root, name, profiles));
+	}
+
+	private List<File> extractFiles(ArchiveDependencies computed) {
 
-		List<Archive> archives = archives(computed.resolve());
+		List<File> files = computed.resolve();
 
 		if (this.progress == ProgressType.DETAILED) {
 			System.out.println("Archives:");
-			for (Archive dependency : archives) {
+			for (File dependency : files) {
 				System.out.println(" " + dependency);
 			}
 		}
-		return archives;
+		return files;
+
+	}
+
+	/**
+	 * Resolve the dependencies of an archive and list them, with their checksums and
+	 * source repositories, in a lock file that can be used to launch the archive later
+	 * without computing the dependency graph again.
+	 * @param root the archive to resolve
+	 * @param name the name of the properties files
+	 * @param profiles the profiles to apply
+	 * @return a lock file for the archive
+	 */
+	public LockFile lock(Archive root, String name, String... profiles) {
+		ArchiveDependencies computed = new ArchiveDependencies(root, name, profiles);
+		List<LockFile.Entry> entries = new ArrayList<>();
+		for (ArtifactResult result : computed.resolveArtifacts()) {
+			String repository = null;
+			if (result.getRepository() instanceof RemoteRepository) {
+				repository = result.getRepository().getId();
+			}
+			entries.add(new LockFile.Entry(result.getArtifact().toString(),
+					LockFile.sha1(result.getArtifact().getFile()), repository));
+		}
+		return new LockFile(entries);
+	}
+
+	private List<File> resolveLock(Resource resource) {
+		if (this.progress == ProgressType.DETAILED) {
+			System.out.println("Resolving from lock: " + resource);
+		}
+		LockFile lock;
+		try {
+			lock = LockFile.read(resource.getInputStream());
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read lock file " + resource, e);
+		}
+		return getEngine().resolve(lock);
+	}
 
+	/**
+	 * The engine shared by all resolutions from this instance. It is created lazily so
+	 * that it picks up the repository configuration (e.g. <code>grape.root</code>) at
+	 * the time of the first resolution.
+	 */
+	private synchronized AetherEngine getEngine() {
+		if (this.engine == null) {
+			List<RepositoryConfiguration> repositories = this.offline
+					? Collections.<RepositoryConfiguration>emptyList()
+					: RepositoryConfigurationFactory.createDefaultRepositoryConfiguration();
+			this.engine = AetherEngine.create(repositories,
+					new DependencyResolutionContext(), this.progress);
+			this.engine.setOffline(this.offline);
+			this.engine.setReport(this.report);
+			if (this.metadataTtl != null) {
+				this.engine.setMetadataTtl(this.metadataTtl);
+			}
+			this.engine.setThreads(this.threads);
+			this.engine.setRepositoryThreads(this.repositoryThreads);
+			this.engine.setVirtualThreads(this.virtualThreads);
+		}
+		return this.engine;
 	}
 
-	private List<Archive> archives(List<File> files) {
+	List<Archive> archives(List<File> files) {
 		List<Archive> archives = new ArrayList<>();
 		for (File file : files) {
 			try {
@@ -299,12 +546,9 @@ public class ArchiveUtils {
 
 		public ArchiveDependencies(Archive root, String name, String... profiles) {
 			this.name = name;
-			this.profiles = new ArrayList<>(Arrays.asList(profiles));
-			DependencyResolutionContext context = new DependencyResolutionContext();
-			List<RepositoryConfiguration> repositories = RepositoryConfigurationFactory
-					.createDefaultRepositoryConfiguration();
-			engine = AetherEngine.create(repositories, context, progress);
-			pomLoader = new PomLoader(engine);
+			this.profiles = profiles(profiles);
+			engine = getEngine().withContext(new DependencyResolutionContext());
+			pomLoader = new PomLoader(engine, poms);
 			compute(root);
 		}
 
@@ -381,12 +625,49 @@ public class ArchiveUtils {
 			return transitive;
 		}
 
+		/**
+		 * @return true if none of the declared dependencies or BOMs has a version range
+		 * (or a meta-version like <code>LATEST</code>)
+		 */
+		public boolean isStable() {
+			for (Dependency dependency : dependencies.values()) {
+				if (isRange(dependency.getArtifact().getVersion())) {
+					return false;
+				}
+			}
+			for (Dependency dependency : boms.values()) {
+				if (isRange(dependency.getArtifact().getVersion())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isRange(String version) {
+			return version.startsWith("[") || version.startsWith("(")
+					|| "LATEST".equals(version) || "RELEASE".equals(version);
+		}
+
 		public List<File> resolve() {
+			List<File> files = new ArrayList<>();
+			for (ArtifactResult result : resolveArtifacts()) {
+				files.add(result.getArtifact().getFile());
+			}
+			return files;
+		}
+
+		public List<ArtifactResult> resolveArtifacts() {
 			engine.addDependencyManagementBoms(new ArrayList<>(boms.values()));
 			engine.addDependencyManagement(new ArrayList<>(managed.values()));
-			List<File> files;
+			List<ArtifactResult> results;
 			try {
-				addParentBoms(engine);
+				LaunchReport.Timer timer = report.start(LaunchReport.BOM);
+				try {
+					addParentBoms(engine);
+				}
+				finally {
+					timer.stop();
+				}
 				addExclusions();
 				if (progress == ProgressType.DETAILED) {
 					System.out.println("BOMs:");
@@ -403,28 +684,54 @@ public class ArchiveUtils {
 						}
 					}
 				}
-				files = engine.resolve(new ArrayList<>(dependencies.values()),
-						transitive);
+				results = engine.resolveArtifacts(
+						new ArrayList<>(dependencies.values()), transitive);
 			}
 			catch (ArtifactResolutionException e) {
 				throw new IllegalStateException("Cannot resolve artifacts", e);
 			}
-			return files;
+			return results;
 		}
 
 		private void addParentBoms(AetherEngine engine)
 				throws ArtifactResolutionException {
 			List<File> poms = engine.resolve(new ArrayList<>(boms.values()), false);
-			for (File pom : poms) {
-				String parent = pomLoader.getParent(new FileSystemResource(pom));
-				while (parent != null) {
-					Dependency dependency = dependency(parent, "pom", "import");
-					addBom(dependency);
-					List<File> parents = engine.resolve(Arrays.asList(dependency), false);
-					if (parents.isEmpty()) {
-						break;
+			// Climb the parent chains of all the BOMs together, one level at a time, so
+			// that each level is resolved (concurrently) in a single call
+			List<List<Dependency>> chains = new ArrayList<>();
+			Map<Integer, File> current = new LinkedHashMap<>();
+			for (int i = 0; i < poms.size(); i++) {
+				chains.add(new ArrayList<Dependency>());
+				current.put(i, poms.get(i));
+			}
+			while (!current.isEmpty()) {
+				Map<Integer, Dependency> parents = new LinkedHashMap<>();
+				for (Map.Entry<Integer, File> entry : current.entrySet()) {
+					String parent = pomLoader
+							.getParent(new FileSystemResource(entry.getValue()));
+					if (parent != null) {
+						Dependency dependency = dependency(parent, "pom", "import");
+						chains.get(entry.getKey()).add(dependency);
+						parents.put(entry.getKey(), dependency);
+					}
+				}
+				current.clear();
+				if (parents.isEmpty()) {
+					break;
+				}
+				List<File> resolved = engine.resolve(new ArrayList<>(parents.values()),
+						false);
+				int index = 0;
+				for (Integer key : parents.keySet()) {
+					if (index < resolved.size()) {
+						current.put(key, resolved.get(index++));
 					}
-					parent = pomLoader.getParent(new FileSystemResource(parents.get(0)));
+				}
+			}
+			// Same order as climbing each chain in turn
+			for (List<Dependency> chain : chains) {
+				for (Dependency dependency : chain) {
+					addBom(dependency);
 				}
 			}
 		}
@@ -433,18 +740,12 @@ public class ArchiveUtils {
 			if (this.exclusions.isEmpty()) {
 				return;
 			}
-			for (String key : this.dependencies.keySet()) {
-				Dependency target = this.dependencies.get(key);
-				Set<Exclusion> possible = new HashSet<>();
-				try {
-					Set<Dependency> collected = new HashSet<>(
-							engine.collect(Arrays.asList(target)));
-					possible.addAll(exclusions(collected));
-				}
-				catch (ArtifactResolutionException e) {
-					throw new IllegalStateException(
-							"Cannot collect trsansitive dependencies for: " + target, e);
-				}
+			// An exclusion that does not match anything in the graph below a dependency
+			// is a no-op, so we can add all of them to every top level dependency and let
+			// the (single) collect prune the excluded nodes, instead of collecting each
+			// dependency separately to find out which exclusions apply to it.
+			Collection<? extends Exclusion> excluded = exclusions(this.exclusions);
+			for (Dependency target : new ArrayList<>(this.dependencies.values())) {
 				Collection<Exclusion> exclusions = target.getExclusions();
 				if (exclusions == null) {
 					exclusions = new HashSet<>();
@@ -452,11 +753,7 @@ public class ArchiveUtils {
 				else {
 					exclusions = new HashSet<>(exclusions);
 				}
-				for (Exclusion exclusion : exclusions(this.exclusions)) {
-					if (possible.contains(exclusion)) {
-						exclusions.add(exclusion);
-					}
-				}
+				exclusions.addAll(excluded);
 				addDependency(target.setExclusions(exclusions));
 			}
 		}
@@ -476,8 +773,15 @@ public class ArchiveUtils {
 			Properties libs = new Properties();
 			addBoms(getPomDependencyManagement(root));
 			addDependencies(getPomDependencies(root));
-			loadLibraryProperties(libs, root);
-			loadLibraryProperties(libs, ArchiveUtils.this.locations);
+			LaunchReport.Timer timer = report.start(LaunchReport.PROPERTIES);
+			try {
+				for (Resource resource : getLibraryProperties(root, name, profiles)) {
+					loadProperties(libs, resource);
+				}
+			}
+			finally {
+				timer.stop();
+			}
 
 			this.transitive = libs.getProperty("transitive.enabled", "true")
 					.equals("true");
@@ -510,210 +814,362 @@ public class ArchiveUtils {
 			return this.pomLoader.getDependencyManagement(getPom(archive));
 		}
 
-		private Resource getPom(Archive archive) {
-			Resource pom;
-			String artifactId;
-			try {
-				pom = new UrlResource(archive.getUrl() + "pom.xml");
-				artifactId = extractArtifactId(archive);
-			}
-			catch (MalformedURLException e) {
-				throw new IllegalStateException("Cannot locate archive", e);
-			}
-			if (!pom.exists()) {
-				String pattern = "META-INF/maven/**"
-						+ (artifactId == null ? "" : "/" + artifactId) + "/pom.xml";
-				Resource resource = findResource(archive, pattern);
-				if (resource != null) {
-					return resource;
-				}
-				// Spring Boot fat jar
-				pattern = "BOOT-INF/classes/META-INF/maven/**"
-						+ (artifactId == null ? "" : "/" + artifactId) + "/pom.xml";
-				resource = findResource(archive, pattern);
-				if (resource != null) {
-					return resource;
-				}
-				// Someone renamed the jar, so we don't know the artifactid
-				pattern = "META-INF/maven/**/pom.xml";
-				resource = findResource(archive, pattern);
-				if (resource != null) {
-					return resource;
-				}
-				// Last chance
-				pattern = "**/META-INF/maven/**/pom.xml";
-				resource = findResource(archive, pattern);
-				if (resource != null) {
-					return resource;
-				}
-			}
-			return pom;
+		private Dependency bom(String coordinates) {
+			return dependency(coordinates, "pom", "import");
 		}
 
-		private Resource findResource(Archive archive, String pattern) {
+		private void loadProperties(Properties props, Resource resource) {
 			try {
-				for (Resource resource : ResourcePatternUtils
-						.getResourcePatternResolver(new DefaultResourceLoader())
-						.getResources(archive.getUrl() + pattern)) {
-					if (resource.exists()) {
-						return resource;
-					}
+				if (progress == ProgressType.DETAILED) {
+					System.out.println("Loading properties from archive: "
+							+ resource.getFilename());
 				}
+				PropertiesLoaderUtils.fillProperties(props, resource);
 			}
 			catch (Exception e) {
+				throw new IllegalStateException("Cannot load properties", e);
 			}
-			return null;
 		}
 
-		private String extractArtifactId(Archive archive) throws MalformedURLException {
-			String path = archive.getUrl().getPath();
-			if (path.endsWith("!/")) {
-				path = path.substring(0, path.length() - 2);
-			}
-			path = StringUtils.getFilename(path);
-			path = path.split("-[0-9]")[0];
-			return path;
+		private Dependency dependency(String coordinates) {
+			return dependency(coordinates, "jar", "compile");
 		}
 
-		private Dependency bom(String coordinates) {
-			return dependency(coordinates, "pom", "import");
+		private Dependency dependency(String coordinates, String defaultExtension,
+				String scope) {
+			return parseDependency(coordinates, defaultExtension, scope);
 		}
 
-		private Properties loadLibraryProperties(Properties props, Archive archive) {
-			if (!profiles.contains("")) {
-				profiles.add(0, "");
+	}
+
+	/**
+	 * Parse dependency co-ordinates in the form
+	 * <code>group:artifact[:extension][:classifier][:version]</code>.
+	 * @param coordinates the co-ordinates
+	 * @param defaultExtension the extension if there is none in the co-ordinates
+	 * @param scope the scope of the dependency
+	 * @return a dependency
+	 */
+	public static Dependency parseDependency(String coordinates,
+			String defaultExtension, String scope) {
+		String[] parts = coordinates.split(":");
+		if (parts.length < 2) {
+			throw new IllegalArgumentException(
+					"Co-ordinates should contain group:artifact[:extension][:classifier][:version]. Found "
+							+ coordinates + ".");
+		}
+		String extension = defaultExtension, classifier, version, artifactId, groupId;
+		if (parts.length > 4) {
+			extension = parts[2];
+			classifier = parts[3];
+			version = parts[4];
+		}
+		else if (parts.length > 3) {
+			if (parts[3].contains(".")) {
+				version = parts[3];
+				classifier = parts[2];
 			}
-			for (String profile : profiles) {
-				String path = name + ("".equals(profile) ? "" : "-") + profile
-						+ ".properties";
-				loadProperties(props, archive, path);
+			else {
+				extension = parts[2];
+				classifier = parts[3];
+				version = null;
+			}
+
+		}
+		else if (parts.length > 2) {
+			if (parts[2].contains(".")) {
+				version = parts[2];
+				classifier = null;
+			}
+			else {
+				classifier = parts[2];
+				version = null;
 			}
-			return props;
 		}
+		else {
+			classifier = null;
+			version = null;
+		}
+		if ("".equals(classifier)) {
+			classifier = null;
+		}
+		groupId = parts[0];
+		artifactId = parts[1];
+		return new Dependency(new DefaultArtifact(groupId, artifactId, classifier,
+				extension, version), scope);
+	}
 
-		private void loadLibraryProperties(Properties props, String... locations) {
-			for (String profile : profiles) {
-				String path = name + ("".equals(profile) ? "" : "-") + profile
-						+ ".properties";
-				for (String location : locations) {
-					try {
-						if (!location.endsWith("/")) {
-							location = location + "/";
-						}
-						loadProperties(props, location, path);
-					}
-					catch (Exception e) {
-						throw new IllegalStateException("Cannot load properties", e);
-					}
+	public List<Archive> combine(Archive parent, Archive archive, String name,
+			String[] profiles) {
+		List<Archive> archives = archives(classpath(parent, archive, name, profiles));
+		archives.add(0, archive);
+		return archives;
+	}
+
+	/**
+	 * Resolve the classpath for an archive (and optional parent) like
+	 * {@link #combine(Archive, Archive, String, String[])}, but only as a list of files,
+	 * without opening any of them. The archive itself is not included.
+	 * @param parent an optional parent archive
+	 * @param archive the archive to launch
+	 * @param name the name of the properties file with the dependencies
+	 * @param profiles the profiles to apply
+	 * @return the resolved jar files, parent first
+	 */
+	public List<File> classpath(Archive parent, Archive archive, String name,
+			String[] profiles) {
+		LaunchReport.Timer timer = this.report.start(LaunchReport.RESOLVE);
+		try {
+			return combineFiles(parent, archive, name, profiles);
+		}
+		finally {
+			timer.stop();
+		}
+	}
+
+	private List<File> combineFiles(Archive parent, Archive archive, String name,
+			String[] profiles) {
+		String key = null;
+		List<File> files = null;
+		if (this.cache != null) {
+			key = digest(parent, archive, name, profiles);
+			files = this.cache.get(key);
+			this.report.increment(
+					files != null ? "classpath.cache.hits" : "classpath.cache.misses");
+		}
+		Resource lock = null;
+		if (files == null && parent == null) {
+			lock = getLock(archive, name, profiles(profiles));
+		}
+		if (files == null && lock != null) {
+			this.report.increment("lock.resolutions");
+			files = resolveLock(lock);
+			if (key != null) {
+				this.cache.put(key, files);
+			}
+		}
+		if (files == null) {
+			files = new ArrayList<>();
+			ArchiveDependencies computed = new ArchiveDependencies(archive, name,
+					profiles);
+			boolean stable = computed.isStable();
+			if (parent == null) {
+				files.addAll(extractFiles(computed));
+			}
+			else {
+				// Resolve the parent once and use it for both halves of the classpath
+				ArchiveDependencies parents = new ArchiveDependencies(parent, name,
+						profiles);
+				stable = stable && parents.isStable();
+				List<ArtifactResult> resolved = parents.resolveArtifacts();
+				for (ArtifactResult result : resolved) {
+					files.add(result.getArtifact().getFile());
 				}
+				files.addAll(subtractFiles(parents, resolved, computed));
+			}
+			// A version range can resolve differently with the same inputs
+			if (key != null && stable) {
+				this.cache.put(key, files);
 			}
 		}
+		return files;
+	}
 
-		private void loadProperties(Properties props, Archive archive, String path) {
-			try {
-				loadProperties(props, archive.getUrl().toString(), path);
-			}
-			catch (Exception e) {
-				throw new IllegalStateException("Cannot load properties", e);
+	/**
+	 * Compute a digest of all the inputs to a dependency resolution for the given
+	 * archive (and optional parent): the pom and thin properties from the archives and
+	 * the external locations, the profiles, and the repository configuration. Two
+	 * resolutions with the same digest will produce the same classpath (unless they
+	 * contain snapshots or version ranges).
+	 * @param parent an optional parent archive
+	 * @param archive the archive to launch
+	 * @param name the name of the properties files
+	 * @param profiles the profiles to apply
+	 * @return a hex encoded digest
+	 */
+	public String digest(Archive parent, Archive archive, String name,
+			String... profiles) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Cannot create digest", e);
+		}
+		List<String> list = profiles(profiles);
+		update(digest, DEFAULT_BOM);
+		update(digest, name);
+		for (String profile : list) {
+			update(digest, profile);
+		}
+		if (parent != null) {
+			update(digest, getPom(parent));
+			for (Resource resource : getLibraryProperties(parent, name, list)) {
+				update(digest, resource);
 			}
 		}
+		update(digest, getPom(archive));
+		for (Resource resource : getLibraryProperties(archive, name, list)) {
+			update(digest, resource);
+		}
+		Resource lock = getLock(archive, name, list);
+		if (lock != null) {
+			update(digest, lock);
+		}
+		for (RepositoryConfiguration repository : RepositoryConfigurationFactory
+				.createDefaultRepositoryConfiguration()) {
+			update(digest, repository.toString());
+		}
+		return String.format("%040x", new BigInteger(1, digest.digest()));
+	}
+
+	private void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(UTF_8));
+		digest.update((byte) 0);
+	}
 
-		private Properties loadProperties(Properties props, String url, String path) {
+	private void update(MessageDigest digest, Resource resource) {
+		update(digest, resource.getDescription());
+		if (resource.exists()) {
 			try {
-				Resource resource = resources.getResource(url)
-						.createRelative("META-INF/" + path);
-				if (resource.exists()) {
-					if (progress == ProgressType.DETAILED) {
-						System.out.println("Loading properties from archive: " + path);
-					}
-					PropertiesLoaderUtils.fillProperties(props, resource);
-				}
-				resource = resources.getResource(url).createRelative("/" + path);
-				if (resource.exists()) {
-					if (progress == ProgressType.DETAILED) {
-						System.out.println("Loading properties from archive: " + path);
-					}
-					PropertiesLoaderUtils.fillProperties(props, resource);
-				}
-				return props;
+				digest.update(FileCopyUtils.copyToByteArray(resource.getInputStream()));
 			}
-			catch (Exception e) {
-				throw new IllegalStateException("Cannot load properties", e);
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot read " + resource, e);
 			}
 		}
+	}
 
-		private Dependency dependency(String coordinates) {
-			return dependency(coordinates, "jar", "compile");
+	private static List<String> profiles(String... profiles) {
+		List<String> list = new ArrayList<>(Arrays.asList(profiles));
+		if (!list.contains("")) {
+			list.add(0, "");
 		}
+		return list;
+	}
 
-		private Dependency dependency(String coordinates, String defaultExtension,
-				String scope) {
-			String[] parts = coordinates.split(":");
-			if (parts.length < 2) {
-				throw new IllegalArgumentException(
-						"Co-ordinates should contain group:artifact[:extension][:classifier][:version]. Found "
-								+ coordinates + ".");
-			}
-			String extension = defaultExtension, classifier, version, artifactId, groupId;
-			if (parts.length > 4) {
-				extension = parts[2];
-				classifier = parts[3];
-				version = parts[4];
-			}
-			else if (parts.length > 3) {
-				if (parts[3].contains(".")) {
-					version = parts[3];
-					classifier = parts[2];
-				}
-				else {
-					extension = parts[2];
-					classifier = parts[3];
-					version = null;
+	/**
+	 * The lock file for an archive: <code>META-INF/{name}.lock</code> if there are no
+	 * profiles, or <code>META-INF/{name}-{profile}.lock</code> for a single profile.
+	 * Properties files in the external locations override the archive, so there is no
+	 * lock if any of those are present.
+	 */
+	private Resource getLock(Archive archive, String name, List<String> profiles) {
+		String path = name;
+		for (String profile : profiles) {
+			if (!"".equals(profile)) {
+				if (!name.equals(path)) {
+					// Locks are complete, so they cannot be combined
+					return null;
 				}
-
+				path = name + "-" + profile;
 			}
-			else if (parts.length > 2) {
-				if (parts[2].contains(".")) {
-					version = parts[2];
-					classifier = null;
-				}
-				else {
-					classifier = parts[2];
-					version = null;
-				}
+		}
+		try {
+			List<Resource> locks = getResources(archive, path + ".lock");
+			if (locks.isEmpty() || !getExternalProperties(name, profiles).isEmpty()) {
+				return null;
 			}
-			else {
-				classifier = null;
-				version = null;
+			return locks.get(0);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot locate lock file", e);
+		}
+	}
+
+	/**
+	 * The thin properties files that apply to an archive, in the order they should be
+	 * loaded: first the ones in the archive itself, then the ones in the external
+	 * locations, with profile-specific files after the default ones.
+	 */
+	private List<Resource> getLibraryProperties(Archive archive, String name,
+			List<String> profiles) {
+		List<Resource> result = new ArrayList<>();
+		try {
+			for (String profile : profiles) {
+				result.addAll(getResources(archive, propertiesPath(name, profile)));
 			}
-			if ("".equals(classifier)) {
-				classifier = null;
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot load properties", e);
+		}
+		result.addAll(getExternalProperties(name, profiles));
+		return result;
+	}
+
+	private List<Resource> getExternalProperties(String name, List<String> profiles) {
+		List<Resource> result = new ArrayList<>();
+		try {
+			for (String profile : profiles) {
+				for (String location : this.locations) {
+					if (!location.endsWith("/")) {
+						location = location + "/";
+					}
+					result.addAll(
+							getResources(location, propertiesPath(name, profile)));
+				}
 			}
-			groupId = parts[0];
-			artifactId = parts[1];
-			return new Dependency(new DefaultArtifact(groupId, artifactId, classifier,
-					extension, version), scope);
 		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot load properties", e);
+		}
+		return result;
+	}
 
+	private String propertiesPath(String name, String profile) {
+		return name + ("".equals(profile) ? "" : "-") + profile + ".properties";
 	}
 
-	public List<Archive> combine(Archive parent, Archive archive, String name,
-			String[] profiles) {
-		List<Archive> archives = new ArrayList<>();
-		if (parent == null) {
-			archives.addAll(extract(archive, name, profiles));
+	/**
+	 * The same as {@link #getResources(String, String)} for the root of an archive, but
+	 * using the index of the archive instead of asking each resource if it exists.
+	 */
+	private List<Resource> getResources(Archive archive, String path)
+			throws IOException {
+		ArchiveIndex index = ArchiveIndex.get(archive);
+		Resource root = this.resources.getResource(archive.getUrl().toString());
+		List<Resource> result = new ArrayList<>();
+		if (index.contains("META-INF/" + path)) {
+			result.add(root.createRelative("META-INF/" + path));
 		}
-		else {
-			archives.addAll(extract(parent, name, profiles));
-			archives.addAll(subtract(parent, archive, name, profiles));
+		if (index.contains(path)) {
+			result.add(root.createRelative("/" + path));
 		}
-		if (!archives.isEmpty()) {
-			archives.add(0, archive);
+		return result;
+	}
+
+	private List<Resource> getResources(String url, String path) throws IOException {
+		List<Resource> result = new ArrayList<>();
+		Resource resource = this.resources.getResource(url)
+				.createRelative("META-INF/" + path);
+		if (resource.exists()) {
+			result.add(resource);
 		}
-		else {
-			archives.add(archive);
+		resource = this.resources.getResource(url).createRelative("/" + path);
+		if (resource.exists()) {
+			result.add(resource);
 		}
-		return archives;
+		return result;
+	}
+
+	private Resource getPom(Archive archive) {
+		try {
+			String pom = ArchiveIndex.get(archive).getPom(extractArtifactId(archive));
+			return new UrlResource(archive.getUrl() + (pom == null ? "pom.xml" : pom));
+		}
+		catch (MalformedURLException e) {
+			throw new IllegalStateException("Cannot locate archive", e);
+		}
+	}
+
+	private String extractArtifactId(Archive archive) throws MalformedURLException {
+		String path = archive.getUrl().getPath();
+		if (path.endsWith("!/")) {
+			path = path.substring(0, path.length() - 2);
+		}
+		path = StringUtils.getFilename(path);
+		path = path.split("-[0-9]")[0];
+		return path;
 	}
 
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
+
+/**
+ * Resolves a batch of artifact requests concurrently. The repository connector only
+ * downloads in parallel within a single request to a single repository, so on a cold
+ * cache a resolution would otherwise be bounded by the sum of the request latencies.
+ * There is a global budget for the number of concurrent resolutions and a separate
+ * budget for the number of concurrent transfers from any one repository. The work can
+ * optionally be done in virtual threads (if the JVM supports them).
+ *
+ * @author Dave Syer
+ *
+ */
+class ArtifactDownloader {
+
+	static final int DEFAULT_THREADS = 10;
+
+	static final int DEFAULT_REPOSITORY_THREADS = 5;
+
+	private final RepositorySystem repositorySystem;
+
+	private final DefaultRepositorySystemSession session;
+
+	private final ConcurrentMap<String, Semaphore> repositories = new ConcurrentHashMap<>();
+
+	private final Set<TransferResource> transfers = Collections
+			.newSetFromMap(new ConcurrentHashMap<TransferResource, Boolean>());
+
+	private volatile int threads = DEFAULT_THREADS;
+
+	private volatile int repositoryThreads = DEFAULT_REPOSITORY_THREADS;
+
+	private volatile boolean virtualThreads;
+
+	ArtifactDownloader(RepositorySystem repositorySystem,
+			DefaultRepositorySystemSession session) {
+		this.repositorySystem = repositorySystem;
+		this.session = session;
+		session.setTransferListener(ChainedTransferListener
+				.newInstance(session.getTransferListener(), new RepositoryBudget()));
+	}
+
+	/**
+	 * @param threads the maximum number of artifacts to resolve concurrently
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @param repositoryThreads the maximum number of concurrent downloads from any one
+	 * repository
+	 */
+	public void setRepositoryThreads(int repositoryThreads) {
+		this.repositoryThreads = Math.max(1, repositoryThreads);
+	}
+
+	/**
+	 * @param virtualThreads flag to say that virtual threads should be used (if they are
+	 * available)
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Resolve the requests concurrently, and report all the failures together, not just
+	 * the first one.
+	 * @param requests the requests to resolve
+	 * @return the results in the same order as the requests
+	 * @throws ArtifactResolutionException if any of the requests failed
+	 */
+	public List<ArtifactResult> resolve(List<ArtifactRequest> requests)
+			throws ArtifactResolutionException {
+		if (requests.size() < 2 || this.threads < 2) {
+			return this.repositorySystem.resolveArtifacts(this.session, requests);
+		}
+		final Semaphore budget = new Semaphore(this.threads);
+		ExecutorService executor = createExecutor(requests.size());
+		try {
+			List<Future<ArtifactResult>> futures = new ArrayList<>();
+			for (final ArtifactRequest request : requests) {
+				futures.add(executor.submit(new Callable<ArtifactResult>() {
+					@Override
+					public ArtifactResult call() throws Exception {
+						budget.acquire();
+						try {
+							return ArtifactDownloader.this.repositorySystem.resolveArtifact(
+									ArtifactDownloader.this.session, request);
+						}
+						finally {
+							budget.release();
+						}
+					}
+				}));
+			}
+			List<ArtifactResult> results = new ArrayList<>();
+			boolean failed = false;
+			for (Future<ArtifactResult> future : futures) {
+				try {
+					results.add(future.get());
+				}
+				catch (ExecutionException e) {
+					if (!(e.getCause() instanceof ArtifactResolutionException)) {
+						throw new IllegalStateException("Cannot resolve artifacts",
+								e.getCause());
+					}
+					failed = true;
+					results.addAll(
+							((ArtifactResolutionException) e.getCause()).getResults());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted", e);
+				}
+			}
+			if (failed) {
+				throw new ArtifactResolutionException(results);
+			}
+			return results;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run some tasks concurrently, in no more threads than the downloads. The tasks do
+	 * not share a budget with {@link #resolve(List)}, so they can resolve artifacts
+	 * themselves without waiting for each other.
+	 * @param tasks the tasks to run
+	 * @return the results in the same order as the tasks
+	 * @throws ExecutionException if any of the tasks failed
+	 */
+	public <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+			throws ExecutionException {
+		List<T> results = new ArrayList<>();
+		if (tasks.size() < 2 || this.threads < 2) {
+			for (Callable<T> task : tasks) {
+				try {
+					results.add(task.call());
+				}
+				catch (Exception e) {
+					throw new ExecutionException(e);
+				}
+			}
+			return results;
+		}
+		ExecutorService executor = createExecutor(tasks.size());
+		try {
+			List<Future<T>> futures = new ArrayList<>();
+			for (Callable<T> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (Future<T> future : futures) {
+				try {
+					results.add(future.get());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted", e);
+				}
+			}
+			return results;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private ExecutorService createExecutor(int tasks) {
+		if (this.virtualThreads) {
+			try {
+				// Only on Java 21 and above
+				return (ExecutorService) Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			}
+			catch (Exception e) {
+				// Fall back to platform threads
+			}
+		}
+		return Executors.newFixedThreadPool(Math.min(tasks, this.threads),
+				new DaemonThreadFactory());
+	}
+
+	Semaphore getRepositoryBudget(TransferEvent event) {
+		String key = event.getResource().getRepositoryUrl();
+		Semaphore semaphore = this.repositories.get(key);
+		if (semaphore == null) {
+			semaphore = new Semaphore(this.repositoryThreads);
+			Semaphore existing = this.repositories.putIfAbsent(key, semaphore);
+			if (existing != null) {
+				semaphore = existing;
+			}
+		}
+		return semaphore;
+	}
+
+	/**
+	 * Holds back a transfer until there is room for it in the budget for its repository.
+	 * Every initiated transfer ends with either a success or a failure event, which
+	 * gives the permit back if the transfer got one (it might have been interrupted while
+	 * waiting).
+	 */
+	private final class RepositoryBudget extends AbstractTransferListener {
+
+		@Override
+		public void transferInitiated(TransferEvent event)
+				throws TransferCancelledException {
+			try {
+				getRepositoryBudget(event).acquire();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TransferCancelledException("Interrupted");
+			}
+			// The resource is the same instance in all the events for one transfer
+			ArtifactDownloader.this.transfers.add(event.getResource());
+		}
+
+		@Override
+		public void transferSucceeded(TransferEvent event) {
+			release(event);
+		}
+
+		@Override
+		public void transferFailed(TransferEvent event) {
+			release(event);
+		}
+
+		private void release(TransferEvent event) {
+			if (ArtifactDownloader.this.transfers.remove(event.getResource())) {
+				getRepositoryBudget(event).release();
+			}
+		}
+
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable,
+					"thin-resolver-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Support for running an app with a class data sharing (CDS) archive for its classpath.
+ * The app is launched in a new JVM with a plain classpath (the jar files that the
+ * launcher resolved), which is what CDS needs, and the archive is stored under the
+ * thin root (in <code>thin/cds</code>), keyed by a digest of the JVM, the classpath and
+ * the launcher itself. How the archive is created depends on the JVM: from Java 19 it
+ * is all automatic, from Java 13 the archive is dumped when the first launch exits, and
+ * on Java 10 to 12 the first launch records a class list that the next one uses to
+ * dump the archive. Older JVMs are not supported (the app is launched normally). The
+ * files that a launch dumps are written to a temporary file of its own and only moved
+ * into place by {@link #finish()}, so concurrent launches never see a partial file.
+ * Agents, debuggers and JMX ports are not passed on from the launcher JVM to the app,
+ * since they would not be able to attach to both.
+ *
+ * @author Dave Syer
+ *
+ */
+class ClassDataSharing {
+
+	private static final List<String> EXCLUDED = Arrays.asList("-XX:SharedArchiveFile",
+			"-XX:ArchiveClassesAtExit", "-XX:SharedClassListFile",
+			"-XX:DumpLoadedClassList", "-Xshare", "-agentlib:", "-agentpath:",
+			"-javaagent:", "-Xrunjdwp", "-Xdebug",
+			"-Dcom.sun.management.jmxremote.port",
+			"-Dcom.sun.management.jmxremote.rmi.port");
+
+	private final File directory;
+
+	private final List<File> classpath;
+
+	private final int version;
+
+	private final String key;
+
+	private File pending;
+
+	ClassDataSharing(File root, List<File> classpath) {
+		this.directory = new File(root, "thin/cds");
+		this.classpath = classpath;
+		this.version = javaVersion();
+		this.key = key(classpath);
+	}
+
+	/**
+	 * @return true if the JVM supports archives for application classes and all the
+	 * entries in the classpath are jar files (CDS cannot use directories)
+	 */
+	public boolean isSupported() {
+		if (this.version < 10 || this.key == null) {
+			return false;
+		}
+		for (File file : this.classpath) {
+			if (!file.isFile()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public File getArchive() {
+		return new File(this.directory, this.key + ".jsa");
+	}
+
+	public File getClassList() {
+		return new File(this.directory, this.key + ".classlist");
+	}
+
+	/**
+	 * Build the command line to run the app with a shared archive, creating the
+	 * archive first if that is needed (only on Java 10 to 12, once there is a class
+	 * list).
+	 * @param mainClass the main class of the app
+	 * @param args the arguments for the app
+	 * @return the command line
+	 */
+	public List<String> command(String mainClass, String[] args) {
+		this.directory.mkdirs();
+		List<String> command = new ArrayList<>();
+		command.add(java());
+		for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (isInherited(option)) {
+				command.add(option);
+			}
+		}
+		command.addAll(options());
+		command.add("-cp");
+		command.add(classpath());
+		command.add(mainClass);
+		for (String arg : args) {
+			command.add(arg);
+		}
+		return command;
+	}
+
+	/**
+	 * Move the file dumped by the app (if any) into place. Call this when the app has
+	 * exited.
+	 */
+	public synchronized void finish() {
+		if (this.pending == null) {
+			return;
+		}
+		File target = new File(this.directory,
+				this.key + (this.version >= 13 ? ".jsa" : ".classlist"));
+		try {
+			if (this.pending.length() > 0) {
+				Files.move(this.pending.toPath(), target.toPath(),
+						StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e) {
+			// Not fatal: the next launch will try again
+		}
+		finally {
+			this.pending.delete();
+			this.pending = null;
+		}
+	}
+
+	/**
+	 * @param option a JVM option of the launcher
+	 * @return true if the option should also be used for the app
+	 */
+	static boolean isInherited(String option) {
+		for (String excluded : EXCLUDED) {
+			if (option.startsWith(excluded)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<String> options() {
+		List<String> options = new ArrayList<>();
+		File archive = getArchive();
+		if (this.version == 10) {
+			// Java 10 only shares application classes with a flag
+			options.add("-XX:+UseAppCDS");
+		}
+		if (this.version >= 19) {
+			options.add("-XX:+AutoCreateSharedArchive");
+			options.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+			return options;
+		}
+		if (!archive.exists() && this.version < 13 && getClassList().exists()) {
+			dump();
+		}
+		if (archive.exists()) {
+			options.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+			return options;
+		}
+		try {
+			this.pending = File.createTempFile(this.key, ".tmp", this.directory);
+		}
+		catch (IOException e) {
+			// Run without an archive
+			return options;
+		}
+		if (this.version >= 13) {
+			options.add("-XX:ArchiveClassesAtExit=" + this.pending.getAbsolutePath());
+		}
+		else {
+			options.add("-XX:DumpLoadedClassList=" + this.pending.getAbsolutePath());
+		}
+		return options;
+	}
+
+	private void dump() {
+		File archive = getArchive();
+		File temp;
+		try {
+			temp = File.createTempFile(this.key, ".tmp", this.directory);
+		}
+		catch (IOException e) {
+			return;
+		}
+		List<String> command = new ArrayList<>();
+		command.add(java());
+		if (this.version == 10) {
+			command.add("-XX:+UseAppCDS");
+		}
+		command.add("-Xshare:dump");
+		command.add("-XX:SharedClassListFile=" + getClassList().getAbsolutePath());
+		command.add("-XX:SharedArchiveFile=" + temp.getAbsolutePath());
+		command.add("-cp");
+		command.add(classpath());
+		try {
+			Process process = new ProcessBuilder(command).redirectErrorStream(true)
+					.redirectOutput(new File(this.directory, this.key + ".log"))
+					.start();
+			if (process.waitFor() == 0 && temp.length() > 0) {
+				// Another launch might be doing the same, so don't leave a partial
+				// archive where it can see it
+				Files.move(temp.toPath(), archive.toPath(),
+						StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e) {
+			// Not fatal: the app just runs without the archive
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	private String classpath() {
+		StringBuilder builder = new StringBuilder();
+		for (File file : this.classpath) {
+			if (builder.length() > 0) {
+				builder.append(File.pathSeparator);
+			}
+			builder.append(file.getAbsolutePath());
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * A digest of the JVM, the launcher, and the path, size and timestamp of every jar
+	 * in the classpath. An archive is only valid for the same JVM and the same jars in
+	 * the same order.
+	 */
+	private static String key(List<File> classpath) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			update(digest, System.getProperty("java.home") + "|"
+					+ System.getProperty("java.vm.version"));
+			File launcher = new File(ClassDataSharing.class.getProtectionDomain()
+					.getCodeSource().getLocation().toURI());
+			List<File> files = new ArrayList<>(classpath);
+			files.add(launcher);
+			for (File file : files) {
+				update(digest, file.getAbsolutePath() + "|" + file.length() + "|"
+						+ file.lastModified());
+			}
+			StringBuilder builder = new StringBuilder();
+			for (byte b : digest.digest()) {
+				builder.append(String.format("%02x", b));
+			}
+			return builder.toString();
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) throws IOException {
+		digest.update((value + "\n").getBytes("UTF-8"));
+	}
+
+	private static String java() {
+		File java = new File(System.getProperty("java.home"), "bin/java");
+		return java.canExecute() ? java.getAbsolutePath() : "java";
+	}
+
+	static int javaVersion() {
+		String version = System.getProperty("java.specification.version", "1.8");
+		if (version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		try {
+			return Integer.parseInt(version);
+		}
+		catch (NumberFormatException e) {
+			return 8;
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A persistent cache of resolved classpaths, stored under the thin root (by default
+ * <code>${user.home}/.m2</code>) in <code>thin/classpath</code>. Each entry is keyed by
+ * a digest of all the inputs to the dependency resolution (see
+ * {@link ArchiveUtils#digest(org.springframework.boot.loader.archive.Archive, org.springframework.boot.loader.archive.Archive, String, String...)}
+ * ) and contains the ordered list of jar files that the resolution produced.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ClasspathCache {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File directory;
+
+	public ClasspathCache(File root) {
+		this.directory = new File(root, "thin/classpath");
+	}
+
+	/**
+	 * Look up a previously resolved classpath.
+	 * @param key the digest of the resolution inputs
+	 * @return the resolved files, or null if there is no entry or any of the files no
+	 * longer exists
+	 */
+	public List<File> get(String key) {
+		File file = new File(this.directory, key);
+		if (!file.exists()) {
+			return null;
+		}
+		List<File> files = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), UTF_8))) {
+			String line = reader.readLine();
+			while (line != null) {
+				if (line.length() > 0) {
+					File resolved = new File(line);
+					if (!resolved.exists()) {
+						return null;
+					}
+					files.add(resolved);
+				}
+				line = reader.readLine();
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+		return files;
+	}
+
+	/**
+	 * Store a resolved classpath. Classpaths containing snapshots are not stored, since
+	 * the snapshot might change without any change in the resolution inputs.
+	 * @param key the digest of the resolution inputs
+	 * @param files the resolved files
+	 */
+	public void put(String key, List<File> files) {
+		for (File file : files) {
+			if (file.getName().contains("SNAPSHOT")) {
+				return;
+			}
+		}
+		if (!this.directory.exists() && !this.directory.mkdirs()) {
+			return;
+		}
+		File temp = null;
+		try {
+			temp = File.createTempFile(key, ".tmp", this.directory);
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp),
+					UTF_8)) {
+				for (File file : files) {
+					writer.write(file.getAbsolutePath());
+					writer.write("\n");
+				}
+			}
+			// Atomic so that concurrent launches never see a partial entry
+			Files.move(temp.toPath(), new File(this.directory, key).toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			// Not fatal: the next launch will just resolve again
+		}
+		finally {
+			if (temp != null && temp.exists()) {
+				temp.delete();
+			}
+		}
+	}
+
+}
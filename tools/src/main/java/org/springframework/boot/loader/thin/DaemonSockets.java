@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The Unix domain sockets that the {@link ResolutionDaemon} listens on. They need Java
+ * 16 or better, so the implementation is in a separate class that is only loaded if the
+ * API is present (and only compiled when building on Java 16 or better, in
+ * <code>src/main/unix</code>). Otherwise there are no sockets, and so no daemon.
+ *
+ * @author Dave Syer
+ *
+ */
+class DaemonSockets {
+
+	private static final DaemonSockets INSTANCE = create();
+
+	DaemonSockets() {
+	}
+
+	public static DaemonSockets get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return true if the JVM has Unix domain sockets
+	 */
+	public boolean isSupported() {
+		return false;
+	}
+
+	/**
+	 * Connect to a socket.
+	 * @param socket the socket file
+	 * @return a connection, or null if nothing is listening
+	 * @throws IOException if the socket cannot be opened
+	 */
+	public Connection connect(File socket) throws IOException {
+		return null;
+	}
+
+	/**
+	 * Listen on a socket (only the owner of the process can connect, if the file system
+	 * supports it).
+	 * @param socket the socket file
+	 * @return a server socket
+	 * @throws IOException if the socket cannot be bound
+	 */
+	public Server bind(File socket) throws IOException {
+		throw new IOException("Unix domain sockets are not supported");
+	}
+
+	private static DaemonSockets create() {
+		try {
+			Class.forName("java.net.UnixDomainSocketAddress", false,
+					DaemonSockets.class.getClassLoader());
+			return (DaemonSockets) Class
+					.forName(DaemonSockets.class.getPackage().getName()
+							+ ".UnixDomainSockets")
+					.getDeclaredConstructor().newInstance();
+		}
+		catch (Throwable e) {
+			// No Unix domain sockets (or not compiled in)
+			return new DaemonSockets();
+		}
+	}
+
+	/**
+	 * A connection to a socket. Closing it from another thread makes blocked reads and
+	 * writes fail.
+	 */
+	interface Connection extends Closeable {
+
+		InputStream getInputStream();
+
+		OutputStream getOutputStream();
+
+	}
+
+	/**
+	 * A socket that accepts connections. Closing it from another thread makes a blocked
+	 * {@link #accept()} fail.
+	 */
+	interface Server extends Closeable {
+
+		/**
+		 * @return the next connection, or null if the server is closed
+		 * @throws IOException if the connection fails
+		 */
+		Connection accept() throws IOException;
+
+		boolean isOpen();
+
+	}
+
+}
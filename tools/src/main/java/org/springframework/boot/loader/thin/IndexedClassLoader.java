@@ -0,0 +1,395 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.springframework.boot.loader.LaunchedURLClassLoader;
+
+/**
+ * A class loader that knows which packages are in its URLs, so it can answer a lookup
+ * for a class or resource that is not there with a single hash probe, instead of
+ * searching every jar. Spring Boot apps look for a lot of classes that are not there
+ * (conditions on the classpath), so with a long classpath the misses are a measurable
+ * part of startup. The index has every directory that contains something (and all its
+ * parents, so a lookup for a directory like <code>templates</code> also works). It is
+ * built from the central directory of each jar (or by walking a directory) and can be
+ * cached on disk, keyed by the URLs and the sizes and timestamps of the files. Only the
+ * most recently used indexes are kept in the cache.
+ * <p>
+ * Only the misses are indexed: the index is a set of packages, not a map from packages
+ * to jars, and a lookup that might find something goes through the normal search of
+ * all the URLs in order. That keeps code sources, signers and package sealing the same
+ * as in a plain {@link LaunchedURLClassLoader}. If any URL cannot be indexed the loader
+ * behaves exactly like its parent class.
+ *
+ * @author Dave Syer
+ *
+ */
+public class IndexedClassLoader extends LaunchedURLClassLoader {
+
+	private static final int MAGIC = 0x7468696e;
+
+	private static final int VERSION = 2;
+
+	private static final int CACHE_SIZE = 50;
+
+	private static final String VERSIONS = "META-INF/versions/";
+
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+
+	private final Set<String> packages;
+
+	/**
+	 * Create a new class loader with no index cache.
+	 * @param urls the URLs to load from
+	 * @param parent the parent class loader
+	 */
+	public IndexedClassLoader(URL[] urls, ClassLoader parent) {
+		this(urls, parent, null);
+	}
+
+	/**
+	 * Create a new class loader, caching the index in a directory.
+	 * @param urls the URLs to load from
+	 * @param parent the parent class loader
+	 * @param cache a directory to store the index in (or null for no cache)
+	 */
+	public IndexedClassLoader(URL[] urls, ClassLoader parent, File cache) {
+		super(urls, parent);
+		this.packages = index(urls, cache);
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		int index = name.lastIndexOf('.');
+		if (!contains(index < 0 ? "" : name.substring(0, index).replace('.', '/'))) {
+			throw new ClassNotFoundException(name);
+		}
+		return super.findClass(name);
+	}
+
+	@Override
+	public URL findResource(String name) {
+		if (!mightContain(name)) {
+			return null;
+		}
+		return super.findResource(name);
+	}
+
+	@Override
+	public Enumeration<URL> findResources(String name) throws IOException {
+		if (!mightContain(name)) {
+			return Collections.emptyEnumeration();
+		}
+		return super.findResources(name);
+	}
+
+	/**
+	 * @return true if the lookups are indexed (i.e. all the URLs could be indexed)
+	 */
+	public boolean isIndexed() {
+		return this.packages != null;
+	}
+
+	private boolean mightContain(String name) {
+		if (name.isEmpty() || name.startsWith("/")) {
+			return true;
+		}
+		if (name.endsWith("/")) {
+			name = name.substring(0, name.length() - 1);
+		}
+		// Either a directory or something in one
+		return contains(name) || contains(packageName(name));
+	}
+
+	private boolean contains(String name) {
+		return this.packages == null || this.packages.contains(name);
+	}
+
+	private static String packageName(String path) {
+		int index = path.lastIndexOf('/');
+		return index < 0 ? "" : path.substring(0, index);
+	}
+
+	private static Set<String> index(URL[] urls, File cache) {
+		String key = null;
+		if (cache != null) {
+			key = key(urls);
+			if (key != null) {
+				File file = new File(cache, key);
+				Set<String> packages = read(file);
+				if (packages != null) {
+					// Mark it as recently used, so it is not pruned
+					file.setLastModified(System.currentTimeMillis());
+					return packages;
+				}
+			}
+		}
+		Set<String> packages = new HashSet<>();
+		for (URL url : urls) {
+			if (!index(url, packages)) {
+				return null;
+			}
+		}
+		if (key != null) {
+			write(new File(cache, key), packages);
+			prune(cache);
+		}
+		return packages;
+	}
+
+	private static boolean index(URL url, Set<String> packages) {
+		try {
+			String path = url.toString();
+			String prefix = "";
+			if (path.startsWith("jar:") && path.indexOf("!/") == path.lastIndexOf("!/")
+					&& path.endsWith("/")) {
+				// A directory in a jar, e.g. BOOT-INF/classes/
+				int index = path.indexOf("!/");
+				prefix = path.substring(index + 2);
+				url = new URL(path.substring("jar:".length(), index));
+			}
+			if (!"file".equals(url.getProtocol())) {
+				return false;
+			}
+			File file = new File(url.toURI());
+			if (file.isDirectory()) {
+				if (prefix.length() > 0) {
+					return false;
+				}
+				index(file, "", packages);
+				return true;
+			}
+			if (!file.exists()) {
+				// Nothing to find there
+				return true;
+			}
+			try (ZipFile zip = new ZipFile(file)) {
+				if (prefix.length() == 0 && hasClassPath(zip)) {
+					// The loader will search jars that are not in the index
+					return false;
+				}
+				for (ZipEntry entry : Collections.list(zip.entries())) {
+					String name = entry.getName();
+					if (!name.startsWith(prefix)) {
+						continue;
+					}
+					name = name.substring(prefix.length());
+					if (name.isEmpty()) {
+						continue;
+					}
+					add(packages, entry.isDirectory()
+							? name.substring(0, name.length() - 1) : packageName(name));
+					if (name.startsWith(VERSIONS)) {
+						// Multi-release jar: the same class may be served from here
+						int index = name.indexOf('/', VERSIONS.length());
+						if (index > 0) {
+							add(packages, packageName(name.substring(index + 1)));
+						}
+					}
+				}
+			}
+			return true;
+		}
+		catch (IOException | URISyntaxException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean hasClassPath(ZipFile zip) throws IOException {
+		ZipEntry entry = zip.getEntry(JarFile.MANIFEST_NAME);
+		if (entry == null) {
+			return false;
+		}
+		try (InputStream input = zip.getInputStream(entry)) {
+			return new Manifest(input).getMainAttributes()
+					.getValue(Attributes.Name.CLASS_PATH) != null;
+		}
+	}
+
+	private static void index(File directory, String path, Set<String> packages) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				add(packages, path + file.getName());
+				index(file, path + file.getName() + "/", packages);
+			}
+			else {
+				add(packages, packageName(path + file.getName()));
+			}
+		}
+	}
+
+	/**
+	 * Add a directory and all its parents (but not the root, unless it is the directory).
+	 */
+	private static void add(Set<String> packages, String directory) {
+		if (directory.isEmpty()) {
+			packages.add(directory);
+		}
+		while (directory.length() > 0 && packages.add(directory)) {
+			directory = packageName(directory);
+		}
+	}
+
+	/**
+	 * A digest of the URLs and the sizes and timestamps of their files. Null if any of
+	 * them is not a plain file (e.g. a directory, which might change without its
+	 * timestamp changing).
+	 */
+	private static String key(URL[] urls) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (URL url : urls) {
+				String path = url.toString();
+				if (path.startsWith("jar:") && path.contains("!/")) {
+					path = path.substring("jar:".length(), path.indexOf("!/"));
+				}
+				URL target = new URL(path);
+				if (!"file".equals(target.getProtocol())) {
+					return null;
+				}
+				File file = new File(target.toURI());
+				if (!file.isFile()) {
+					return null;
+				}
+				digest.update((url + "|" + file.length() + "|" + file.lastModified()
+						+ "\n").getBytes("UTF-8"));
+			}
+			StringBuilder builder = new StringBuilder();
+			for (byte b : digest.digest()) {
+				builder.append(String.format("%02x", b));
+			}
+			return builder.toString();
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Delete all but the most recently used indexes.
+	 */
+	private static void prune(File cache) {
+		File[] files = cache.listFiles();
+		if (files == null || files.length <= CACHE_SIZE) {
+			return;
+		}
+		final Map<File, Long> used = new HashMap<>();
+		for (File file : files) {
+			if (!file.getName().endsWith(".tmp")) {
+				used.put(file, file.lastModified());
+			}
+		}
+		List<File> sorted = new ArrayList<>(used.keySet());
+		Collections.sort(sorted, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return used.get(o2).compareTo(used.get(o1));
+			}
+		});
+		for (File file : sorted.subList(Math.min(CACHE_SIZE, sorted.size()),
+				sorted.size())) {
+			file.delete();
+		}
+	}
+
+	private static Set<String> read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				return null;
+			}
+			int count = input.readInt();
+			Set<String> packages = new HashSet<>(count * 2);
+			for (int i = 0; i < count; i++) {
+				packages.add(input.readUTF());
+			}
+			return packages;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void write(File file, Set<String> packages) {
+		File directory = file.getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) {
+			return;
+		}
+		File temp = null;
+		try {
+			temp = File.createTempFile(file.getName(), ".tmp", directory);
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(packages.size());
+				for (String name : packages) {
+					output.writeUTF(name);
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			// Not fatal: the index will be built again next time
+		}
+		finally {
+			if (temp != null && temp.exists()) {
+				temp.delete();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+
+/**
+ * Hooks for emitting events about the launch to a profiler. If the JVM has Flight
+ * Recorder (<code>jdk.jfr</code>) the phases of the launch and the artifact transfers
+ * show up as custom events on the same timeline as the application, otherwise nothing
+ * happens. The Flight Recorder events are in a separate class that is only loaded if
+ * the API is present (and only compiled when building on Java 11 or better, in
+ * <code>src/main/jfr</code>).
+ *
+ * @author Dave Syer
+ *
+ */
+class LaunchEvents {
+
+	private static final LaunchEvents INSTANCE = create();
+
+	LaunchEvents() {
+	}
+
+	public static LaunchEvents get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Begin an event for a phase of the launch.
+	 * @param phase the name of the phase
+	 * @return a token to pass to {@link #end(Object)}, or null if nothing is recording
+	 */
+	public Object begin(String phase) {
+		return null;
+	}
+
+	/**
+	 * End an event for a phase of the launch.
+	 * @param token the token from {@link #begin(String)} (can be null)
+	 */
+	public void end(Object token) {
+	}
+
+	/**
+	 * Add a listener to the session so that there is an event for every transfer.
+	 * @param session the session to instrument
+	 */
+	public void instrument(DefaultRepositorySystemSession session) {
+	}
+
+	private static LaunchEvents create() {
+		try {
+			Class.forName("jdk.jfr.Event", false, LaunchEvents.class.getClassLoader());
+			return (LaunchEvents) Class
+					.forName(LaunchEvents.class.getPackage().getName()
+							+ ".FlightRecorderEvents")
+					.getDeclaredConstructor().newInstance();
+		}
+		catch (Throwable e) {
+			// No Flight Recorder (or not allowed to use it)
+			return new LaunchEvents();
+		}
+	}
+
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.util.listener.ChainedRepositoryListener;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
+
+/**
+ * A record of where the time went in a single launch: wall and CPU time for each phase,
+ * some counters (e.g. cache hits and misses), and the requests, failures and bytes
+ * transferred for each remote repository. It can be written as JSON with
+ * {@link #write(File)}. A phase that starts while another one is running on the same
+ * thread is listed under it (in <code>"phases"</code>), and its time is included in the
+ * time of the enclosing phase, so only the top level phases add up. Each phase is also a
+ * Flight Recorder event if the JVM supports it (see {@link LaunchEvents}). CPU time is
+ * measured on the thread that runs the phase, so work done by the download threads only
+ * shows up as wall time.
+ *
+ * @author Dave Syer
+ *
+ */
+public class LaunchReport {
+
+	public static final String ARCHIVE = "archive";
+
+	public static final String RESOLVE = "resolve";
+
+	public static final String DAEMON = "daemon";
+
+	public static final String PROPERTIES = "properties";
+
+	public static final String POM = "pom";
+
+	public static final String BOM = "bom";
+
+	public static final String COLLECT = "collect";
+
+	public static final String DOWNLOAD = "download";
+
+	public static final String CLASSLOADER = "classloader";
+
+	public static final String MAIN_CLASS = "mainclass";
+
+	public static final String UPTIME = "uptime";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final ConcurrentMap<String, Phase> phases = new ConcurrentSkipListMap<>();
+
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentSkipListMap<>();
+
+	private final ConcurrentMap<String, Repository> repositories = new ConcurrentHashMap<>();
+
+	private final Map<String, String> attributes = new ConcurrentSkipListMap<>();
+
+	private final ThreadLocal<Phase> current = new ThreadLocal<>();
+
+	/**
+	 * Start timing a phase. Phases can run more than once (the times are added up). A
+	 * phase started inside another one on the same thread is nested under it, unless it
+	 * has the same name, in which case it is already being timed and the timer does
+	 * nothing.
+	 * @param name the name of the phase
+	 * @return a timer to stop when the phase is over
+	 */
+	public Timer start(String name) {
+		Phase parent = this.current.get();
+		if (parent != null && parent.name.equals(name)) {
+			return new Timer(this.current, parent, null, null);
+		}
+		Phase phase = getPhase(parent == null ? this.phases : parent.phases, name);
+		this.current.set(phase);
+		return new Timer(this.current, parent, phase, LaunchEvents.get().begin(name));
+	}
+
+	/**
+	 * Record the time for a phase that has already happened (e.g. the time from the start
+	 * of the JVM to the launch of the application).
+	 * @param name the name of the phase
+	 * @param millis the elapsed time
+	 */
+	public void record(String name, long millis) {
+		getPhase(this.phases, name).add(millis * 1000000L, 0);
+	}
+
+	public void increment(String counter) {
+		AtomicLong value = this.counters.get(counter);
+		if (value == null) {
+			value = new AtomicLong();
+			AtomicLong existing = this.counters.putIfAbsent(counter, value);
+			if (existing != null) {
+				value = existing;
+			}
+		}
+		value.incrementAndGet();
+	}
+
+	public void setAttribute(String name, String value) {
+		if (value != null) {
+			this.attributes.put(name, value);
+		}
+	}
+
+	/**
+	 * Add listeners to a repository session so that local repository hits and remote
+	 * transfers are counted in this report.
+	 * @param session the session to instrument
+	 */
+	public void instrument(DefaultRepositorySystemSession session) {
+		session.setRepositoryListener(ChainedRepositoryListener
+				.newInstance(session.getRepositoryListener(), new RepositoryCounter()));
+		session.setTransferListener(ChainedTransferListener
+				.newInstance(session.getTransferListener(), new TransferCounter()));
+	}
+
+	public void write(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				UTF_8)) {
+			writer.write(toString());
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder json = new StringBuilder("{\n");
+		for (Map.Entry<String, String> entry : this.attributes.entrySet()) {
+			json.append("  ").append(quote(entry.getKey())).append(": ")
+					.append(quote(entry.getValue())).append(",\n");
+		}
+		json.append("  \"phases\": ");
+		append(json, this.phases, "  ");
+		json.append(",\n  \"counters\": {");
+		String separator = "\n";
+		for (Map.Entry<String, AtomicLong> entry : this.counters.entrySet()) {
+			json.append(separator).append("    ").append(quote(entry.getKey()))
+					.append(": ").append(entry.getValue().get());
+			separator = ",\n";
+		}
+		json.append("\n  },\n  \"repositories\": {");
+		separator = "\n";
+		for (Map.Entry<String, Repository> entry : this.repositories.entrySet()) {
+			Repository repository = entry.getValue();
+			json.append(separator).append("    ").append(quote(entry.getKey()))
+					.append(": {\"requests\": ").append(repository.requests.get())
+					.append(", \"notFound\": ").append(repository.notFound.get())
+					.append(", \"failures\": ").append(repository.failures.get())
+					.append(", \"bytes\": ").append(repository.bytes.get())
+					.append("}");
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+		return json.toString();
+	}
+
+	private static void append(StringBuilder json, Map<String, Phase> phases,
+			String indent) {
+		json.append("{");
+		String separator = "\n";
+		for (Phase phase : phases.values()) {
+			json.append(separator).append(indent).append("  ").append(quote(phase.name))
+					.append(": {\"count\": ").append(phase.count.get())
+					.append(", \"wallMillis\": ").append(phase.wall.get() / 1000000L)
+					.append(", \"cpuMillis\": ").append(phase.cpu.get() / 1000000L);
+			if (!phase.phases.isEmpty()) {
+				json.append(", \"phases\": ");
+				append(json, phase.phases, indent + "  ");
+			}
+			json.append("}");
+			separator = ",\n";
+		}
+		json.append("\n").append(indent).append("}");
+	}
+
+	private static String quote(String value) {
+		StringBuilder builder = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			}
+			else if (c < ' ') {
+				builder.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	private static Phase getPhase(ConcurrentMap<String, Phase> phases, String name) {
+		Phase phase = phases.get(name);
+		if (phase == null) {
+			phase = new Phase(name);
+			Phase existing = phases.putIfAbsent(name, phase);
+			if (existing != null) {
+				phase = existing;
+			}
+		}
+		return phase;
+	}
+
+	private Repository getRepository(TransferEvent event) {
+		String key = event.getResource().getRepositoryUrl();
+		Repository repository = this.repositories.get(key);
+		if (repository == null) {
+			repository = new Repository();
+			Repository existing = this.repositories.putIfAbsent(key, repository);
+			if (existing != null) {
+				repository = existing;
+			}
+		}
+		return repository;
+	}
+
+	private static long cpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported()
+				? threads.getCurrentThreadCpuTime() : 0;
+	}
+
+	public static class Timer {
+
+		private final ThreadLocal<Phase> current;
+
+		private final Phase parent;
+
+		private final Phase phase;
+
+		private final long wall;
+
+		private final long cpu;
+
+		private final Object event;
+
+		private Timer(ThreadLocal<Phase> current, Phase parent, Phase phase,
+				Object event) {
+			this.current = current;
+			this.parent = parent;
+			this.phase = phase;
+			this.event = event;
+			this.wall = System.nanoTime();
+			this.cpu = cpuTime();
+		}
+
+		public void stop() {
+			if (this.phase == null) {
+				return;
+			}
+			this.phase.add(System.nanoTime() - this.wall, cpuTime() - this.cpu);
+			if (this.parent == null) {
+				this.current.remove();
+			}
+			else {
+				this.current.set(this.parent);
+			}
+			LaunchEvents.get().end(this.event);
+		}
+
+	}
+
+	private static class Phase {
+
+		private final String name;
+
+		private final ConcurrentMap<String, Phase> phases = new ConcurrentSkipListMap<>();
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong wall = new AtomicLong();
+
+		private final AtomicLong cpu = new AtomicLong();
+
+		Phase(String name) {
+			this.name = name;
+		}
+
+		void add(long wall, long cpu) {
+			this.count.incrementAndGet();
+			this.wall.addAndGet(wall);
+			this.cpu.addAndGet(cpu);
+		}
+
+	}
+
+	private static class Repository {
+
+		private final AtomicLong requests = new AtomicLong();
+
+		private final AtomicLong notFound = new AtomicLong();
+
+		private final AtomicLong failures = new AtomicLong();
+
+		private final AtomicLong bytes = new AtomicLong();
+
+	}
+
+	private class RepositoryCounter extends AbstractRepositoryListener {
+
+		@Override
+		public void artifactResolved(RepositoryEvent event) {
+			if (event.getRepository() instanceof LocalRepository) {
+				increment("local.hits");
+			}
+		}
+
+		@Override
+		public void artifactDownloading(RepositoryEvent event) {
+			increment("local.misses");
+		}
+
+	}
+
+	private class TransferCounter extends AbstractTransferListener {
+
+		@Override
+		public void transferInitiated(TransferEvent event) {
+			getRepository(event).requests.incrementAndGet();
+		}
+
+		@Override
+		public void transferSucceeded(TransferEvent event) {
+			getRepository(event).bytes.addAndGet(event.getTransferredBytes());
+		}
+
+		@Override
+		public void transferFailed(TransferEvent event) {
+			Exception exception = event.getException();
+			if (exception instanceof ArtifactNotFoundException
+					|| exception instanceof MetadataNotFoundException) {
+				getRepository(event).notFound.incrementAndGet();
+			}
+			else {
+				getRepository(event).failures.incrementAndGet();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A lock file (<code>META-INF/thin.lock</code> by default) listing the fully resolved
+ * dependencies of an application, in classpath order. Each line has the artifact
+ * coordinates (<code>group:artifact:extension[:classifier]:version</code>), its SHA-1
+ * checksum and the id of the repository it came from, separated by spaces. Lines
+ * starting with <code>#</code> are comments. An unknown checksum or repository is
+ * written as <code>-</code>.
+ *
+ * @author Dave Syer
+ *
+ */
+public class LockFile {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String UNKNOWN = "-";
+
+	private final List<Entry> entries;
+
+	public LockFile(List<Entry> entries) {
+		this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+	}
+
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+
+	public static LockFile read(InputStream stream) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(stream, UTF_8))) {
+			String line = reader.readLine();
+			while (line != null) {
+				line = line.trim();
+				if (line.length() > 0 && !line.startsWith("#")) {
+					String[] parts = line.split("\\s+");
+					entries.add(new Entry(parts[0], parts.length > 1 ? parts[1] : null,
+							parts.length > 2 ? parts[2] : null));
+				}
+				line = reader.readLine();
+			}
+		}
+		return new LockFile(entries);
+	}
+
+	public void write(OutputStream stream) throws IOException {
+		Writer writer = new OutputStreamWriter(stream, UTF_8);
+		writer.write("# coordinates sha1 repository\n");
+		for (Entry entry : this.entries) {
+			writer.write(entry.getCoordinates() + " " + value(entry.getSha1()) + " "
+					+ value(entry.getRepository()) + "\n");
+		}
+		writer.flush();
+	}
+
+	private String value(String value) {
+		return value == null ? UNKNOWN : value;
+	}
+
+	/**
+	 * Compute the SHA-1 checksum of a file in the same (hex) format that is used in the
+	 * lock file and in Maven repositories.
+	 * @param file the file to checksum
+	 * @return the hex encoded checksum
+	 */
+	public static String sha1(File file) {
+		try (InputStream stream = new FileInputStream(file)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] buffer = new byte[65536];
+			int count = stream.read(buffer);
+			while (count >= 0) {
+				digest.update(buffer, 0, count);
+				count = stream.read(buffer);
+			}
+			return String.format("%040x", new BigInteger(1, digest.digest()));
+		}
+		catch (IOException | NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Cannot compute checksum for " + file, e);
+		}
+	}
+
+	public static class Entry {
+
+		private final String coordinates;
+		private final String sha1;
+		private final String repository;
+
+		public Entry(String coordinates, String sha1, String repository) {
+			this.coordinates = coordinates;
+			this.sha1 = UNKNOWN.equals(sha1) ? null : sha1;
+			this.repository = UNKNOWN.equals(repository) ? null : repository;
+		}
+
+		public String getCoordinates() {
+			return this.coordinates;
+		}
+
+		/**
+		 * @return the SHA-1 checksum or null if it is not known
+		 */
+		public String getSha1() {
+			return this.sha1;
+		}
+
+		/**
+		 * @return the id of the source repository or null if it is not known
+		 */
+		public String getRepository() {
+			return this.repository;
+		}
+
+		@Override
+		public String toString() {
+			return this.coordinates;
+		}
+
+	}
+
+}
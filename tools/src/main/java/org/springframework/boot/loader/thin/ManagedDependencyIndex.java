@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+
+/**
+ * A compact binary copy of the managed dependencies of a BOM, stored next to the BOM's
+ * pom in the local repository. The index records the BOM coordinates and the checksum
+ * of the pom, so it is only used if the pom has not changed since the index was
+ * written. Reading the index is much cheaper than building the effective model for the
+ * BOM (which for <code>spring-boot-dependencies</code> has about a thousand entries).
+ *
+ * @author Dave Syer
+ *
+ */
+final class ManagedDependencyIndex {
+
+	private static final int MAGIC = 0x7468696e;
+
+	private static final int VERSION = 1;
+
+	private static final String SUFFIX = ".thin-managed";
+
+	private ManagedDependencyIndex() {
+	}
+
+	/**
+	 * Read the managed dependencies of a BOM from its index.
+	 * @param bom the BOM artifact
+	 * @param pom the pom file of the BOM in the local repository
+	 * @return the managed dependencies or null if there is no valid index
+	 */
+	public static List<Dependency> read(Artifact bom, File pom) {
+		File file = new File(pom.getPath() + SUFFIX);
+		if (!file.exists() || !pom.exists()) {
+			return null;
+		}
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION
+					|| !input.readUTF().equals(key(bom))
+					|| !input.readUTF().equals(LockFile.sha1(pom))) {
+				return null;
+			}
+			int count = input.readInt();
+			List<Dependency> result = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				result.add(readDependency(input));
+			}
+			return result;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write an index of the managed dependencies of a BOM next to its pom.
+	 * @param bom the BOM artifact
+	 * @param pom the pom file of the BOM in the local repository
+	 * @param dependencies the managed dependencies
+	 */
+	public static void write(Artifact bom, File pom, List<Dependency> dependencies) {
+		File temp = null;
+		try {
+			temp = File.createTempFile(pom.getName(), ".tmp", pom.getParentFile());
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeUTF(key(bom));
+				output.writeUTF(LockFile.sha1(pom));
+				output.writeInt(dependencies.size());
+				for (Dependency dependency : dependencies) {
+					writeDependency(output, dependency);
+				}
+			}
+			Files.move(temp.toPath(), new File(pom.getPath() + SUFFIX).toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			// Not fatal: the BOM will be read from the pom again next time
+		}
+		finally {
+			if (temp != null && temp.exists()) {
+				temp.delete();
+			}
+		}
+	}
+
+	private static String key(Artifact bom) {
+		return bom.getGroupId() + ":" + bom.getArtifactId() + ":" + bom.getVersion();
+	}
+
+	private static void writeDependency(DataOutputStream output, Dependency dependency)
+			throws IOException {
+		Artifact artifact = dependency.getArtifact();
+		output.writeUTF(artifact.getGroupId());
+		output.writeUTF(artifact.getArtifactId());
+		output.writeUTF(artifact.getClassifier());
+		output.writeUTF(artifact.getExtension());
+		output.writeUTF(artifact.getVersion());
+		Map<String, String> properties = artifact.getProperties();
+		output.writeInt(properties.size());
+		for (Map.Entry<String, String> entry : properties.entrySet()) {
+			output.writeUTF(entry.getKey());
+			output.writeUTF(entry.getValue());
+		}
+		output.writeUTF(dependency.getScope());
+		Boolean optional = dependency.getOptional();
+		output.writeByte(optional == null ? 0 : (optional ? 1 : 2));
+		Collection<Exclusion> exclusions = dependency.getExclusions();
+		output.writeInt(exclusions.size());
+		for (Exclusion exclusion : exclusions) {
+			output.writeUTF(exclusion.getGroupId());
+			output.writeUTF(exclusion.getArtifactId());
+			output.writeUTF(exclusion.getClassifier());
+			output.writeUTF(exclusion.getExtension());
+		}
+	}
+
+	private static Dependency readDependency(DataInputStream input) throws IOException {
+		String groupId = input.readUTF();
+		String artifactId = input.readUTF();
+		String classifier = input.readUTF();
+		String extension = input.readUTF();
+		String version = input.readUTF();
+		int count = input.readInt();
+		Map<String, String> properties = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			properties.put(input.readUTF(), input.readUTF());
+		}
+		Artifact artifact = new DefaultArtifact(groupId, artifactId, classifier,
+				extension, version, properties, (File) null);
+		String scope = input.readUTF();
+		byte optional = input.readByte();
+		count = input.readInt();
+		List<Exclusion> exclusions = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			exclusions.add(new Exclusion(input.readUTF(), input.readUTF(),
+					input.readUTF(), input.readUTF()));
+		}
+		return new Dependency(artifact, scope,
+				optional == 0 ? null : Boolean.valueOf(optional == 1), exclusions);
+	}
+
+}
@@ -18,12 +18,16 @@ package org.springframework.boot.loader.thin;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.maven.model.DependencyManagement;
 import org.apache.maven.model.Model;
@@ -51,15 +55,28 @@ public class PomLoader {
 
 	private AetherEngine engine;
 
+	private final ModelCache cache;
+
 	public PomLoader(AetherEngine engine) {
+		this(engine, new ModelCache());
+	}
+
+	/**
+	 * Create a pom loader that shares parsed models and parent properties with other
+	 * loaders using the same cache (e.g. all the loaders in a single launch).
+	 * @param engine the engine to resolve parent poms with
+	 * @param cache the shared cache
+	 */
+	PomLoader(AetherEngine engine, ModelCache cache) {
 		this.engine = engine;
+		this.cache = cache;
 	}
 
 	public String getParent(Resource pom) {
 		if (!pom.exists()) {
 			return null;
 		}
-		Model model = readModel(pom);
+		Model model = getModel(pom);
 		Parent parent = model.getParent();
 		if (parent != null) {
 			return parent.getGroupId() + ":" + parent.getArtifactId() + ":pom::"
@@ -124,16 +141,7 @@ public class PomLoader {
 
 	private void loadProperties(Model model, Properties properties) {
 		if (model.getParent() != null) {
-			Artifact artifact = getParentArtifact(model);
-			try {
-				List<File> resolved = engine.resolve(
-						Arrays.asList(new Dependency(artifact, "import")), false);
-				loadProperties(readModel(new FileSystemResource(resolved.get(0))),
-						properties);
-			}
-			catch (ArtifactResolutionException e) {
-				// TODO: log a warning?
-			}
+			properties.putAll(getParentProperties(getParentArtifact(model)));
 		}
 		properties.putAll(model.getProperties());
 		if (model.getVersion() != null) {
@@ -153,6 +161,30 @@ public class PomLoader {
 		}
 	}
 
+	/**
+	 * The effective properties of a parent pom (including its own parents). They only
+	 * depend on the coordinates of the parent, so they are computed once per cache.
+	 */
+	private Properties getParentProperties(Artifact artifact) {
+		String key = artifact.toString();
+		Properties properties = this.cache.properties.get(key);
+		if (properties != null) {
+			return properties;
+		}
+		properties = new Properties();
+		try {
+			List<File> resolved = engine
+					.resolve(Arrays.asList(new Dependency(artifact, "import")), false);
+			loadProperties(getModel(new FileSystemResource(resolved.get(0))),
+					properties);
+		}
+		catch (ArtifactResolutionException e) {
+			// TODO: log a warning?
+		}
+		Properties existing = this.cache.properties.putIfAbsent(key, properties);
+		return existing != null ? existing : properties;
+	}
+
 	private Artifact getParentArtifact(Model model) {
 		Parent parent = model.getParent();
 		return new DefaultArtifact(parent.getGroupId(), parent.getArtifactId(), "pom",
@@ -190,11 +222,67 @@ public class PomLoader {
 				dependency.getVersion());
 	}
 
-	private static Model readModel(Resource resource) {
+	/**
+	 * A copy of the model for a pom that the caller is free to modify.
+	 */
+	private Model readModel(Resource resource) {
+		return getModel(resource).clone();
+	}
+
+	/**
+	 * The (shared) model for a pom. Callers must not modify it.
+	 */
+	private Model getModel(Resource resource) {
+		String key = key(resource);
+		if (key == null) {
+			return loadModel(resource);
+		}
+		Model model = this.cache.models.get(key);
+		if (model == null) {
+			model = loadModel(resource);
+			Model existing = this.cache.models.putIfAbsent(key, model);
+			if (existing != null) {
+				model = existing;
+			}
+		}
+		return model;
+	}
+
+	private static String key(Resource resource) {
+		try {
+			File file = resource.getFile();
+			return file.getAbsolutePath() + "@" + file.lastModified();
+		}
+		catch (IOException e) {
+			// Not a file (e.g. an entry in a jar)
+		}
+		try {
+			URL url = resource.getURL();
+			String key = url.toString();
+			String path = key.startsWith("jar:") ? key.substring("jar:".length()) : "";
+			if (path.startsWith("file:") && path.contains("!/")) {
+				// The URL of an entry is the same when the jar is rebuilt, so add the
+				// size and time stamp of the jar file
+				File jar = new File(new URL(path.substring(0, path.indexOf("!/")))
+						.toURI());
+				key = key + "@" + jar.length() + "@" + jar.lastModified();
+			}
+			return key;
+		}
+		catch (IOException e) {
+			return null;
+		}
+		catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	private Model loadModel(Resource resource) {
 		DefaultModelProcessor modelProcessor = new DefaultModelProcessor();
 		modelProcessor.setModelLocator(new DefaultModelLocator());
 		modelProcessor.setModelReader(new DefaultModelReader());
 
+		LaunchReport.Timer timer = this.engine.getReport().start(LaunchReport.POM);
 		try {
 			return modelProcessor.read(resource.getInputStream(), null);
 		}
@@ -202,6 +290,21 @@ public class PomLoader {
 			throw new IllegalStateException("Failed to build model from effective pom",
 					ex);
 		}
+		finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Parsed models and effective parent properties, keyed by the location of the pom
+	 * and the coordinates of the parent respectively.
+	 */
+	static class ModelCache {
+
+		private final ConcurrentMap<String, Model> models = new ConcurrentHashMap<>();
+
+		private final ConcurrentMap<String, Properties> properties = new ConcurrentHashMap<>();
+
 	}
 
 }
@@ -0,0 +1,679 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.loader.archive.Archive;
+import org.springframework.boot.loader.archive.ExplodedArchive;
+import org.springframework.boot.loader.archive.JarFileArchive;
+import org.springframework.boot.loader.jar.JarFile;
+import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
+
+/**
+ * A long-lived process that resolves classpaths for thin launchers on the same host, so
+ * that the repository system, the settings, and the parsed poms and BOMs stay warm
+ * between launches. There is one daemon per thin root, listening on a Unix domain socket
+ * (<code>thin/daemon.sock</code> under the root), and it exits when it has been idle for
+ * 30 minutes. A launcher that cannot reach the daemon starts one in the background and
+ * resolves its own classpath, so the daemon is only ever an optimization, and if the
+ * daemon does not answer within {@link #TIMEOUT_MILLIS} the launcher gives up on it in
+ * the same way. Requests for different archives are resolved concurrently, and requests
+ * for the same archive one at a time (so the second one finds the first in the cache).
+ * A pom in a jar is cached with the size and time stamp of the jar, and so is an open
+ * parent archive, so a jar that is rebuilt at the same path is read again.
+ * Unix domain sockets need Java 16 or better (in the launcher and in the daemon), see
+ * {@link DaemonSockets}.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ResolutionDaemon {
+
+	private static final int MAGIC = 0x7468696e;
+
+	private static final int VERSION = 1;
+
+	private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+	/**
+	 * The time that a launcher waits for the daemon to resolve a classpath before
+	 * resolving it itself.
+	 */
+	public static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private final File root;
+
+	private final File socket;
+
+	private final ConcurrentMap<String, ArchiveUtils> archives = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Parent> parents = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+	private volatile long lastRequest = System.currentTimeMillis();
+
+	private volatile DaemonSockets.Server server;
+
+	/**
+	 * Run a daemon until it has been idle for long enough.
+	 * @param args optionally the thin root (otherwise <code>${user.home}/.m2</code>)
+	 * @throws Exception if the daemon cannot start
+	 */
+	public static void main(String[] args) throws Exception {
+		File root;
+		if (args.length > 0) {
+			root = new File(args[0]).getAbsoluteFile();
+			// There is a grape root that is used by the aether engine internally
+			System.setProperty("grape.root", root.getPath());
+		}
+		else {
+			root = new File(System.getProperty("user.home"), ".m2");
+		}
+		new ResolutionDaemon(root).run();
+	}
+
+	ResolutionDaemon(File root) {
+		this.root = root;
+		this.socket = getSocket(root);
+	}
+
+	/**
+	 * The socket that a daemon for this root listens on.
+	 * @param root the thin root
+	 * @return the socket file
+	 */
+	public static File getSocket(File root) {
+		return new File(root, "thin/daemon.sock");
+	}
+
+	/**
+	 * Ask the daemon for a classpath.
+	 * @param root the thin root
+	 * @param request the request
+	 * @return the resolved files (as per {@link ArchiveUtils#classpath}), or null if the
+	 * daemon is not running or does not answer within {@link #TIMEOUT_MILLIS}
+	 * @throws IOException if the daemon could not resolve the classpath
+	 */
+	public static List<File> classpath(File root, Request request) throws IOException {
+		return classpath(root, request, TIMEOUT_MILLIS);
+	}
+
+	static List<File> classpath(File root, Request request, long timeout)
+			throws IOException {
+		File socket = getSocket(root);
+		if (!socket.exists()) {
+			return null;
+		}
+		final DaemonSockets.Connection connection = DaemonSockets.get().connect(socket);
+		if (connection == null) {
+			return null;
+		}
+		final boolean[] expired = new boolean[1];
+		Timer timer = new Timer("thin-daemon-timeout", true);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				synchronized (expired) {
+					expired[0] = true;
+				}
+				try {
+					// Makes the blocked read fail
+					connection.close();
+				}
+				catch (IOException e) {
+				}
+			}
+		}, timeout);
+		try (DaemonSockets.Connection channel = connection) {
+			DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(channel.getOutputStream()));
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			request.write(output);
+			output.flush();
+			DataInputStream input = new DataInputStream(
+					new BufferedInputStream(channel.getInputStream()));
+			if (!input.readBoolean()) {
+				throw new IOException("Daemon failed: " + input.readUTF());
+			}
+			int count = input.readInt();
+			List<File> files = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				files.add(new File(input.readUTF()));
+			}
+			return files;
+		}
+		catch (IOException e) {
+			synchronized (expired) {
+				if (expired[0]) {
+					// Too slow, so the launcher will resolve the classpath itself
+					return null;
+				}
+			}
+			throw e;
+		}
+		finally {
+			timer.cancel();
+		}
+	}
+
+	/**
+	 * Start a daemon in the background, unless there is one running already.
+	 * @param root the thin root
+	 * @param explicit flag to say that the root was set explicitly (otherwise the daemon
+	 * uses the default Maven settings and local repository)
+	 * @return true if a daemon process was started
+	 */
+	public static boolean start(File root, boolean explicit) {
+		File directory = new File(root, "thin");
+		if (!directory.exists() && !directory.mkdirs()) {
+			return false;
+		}
+		try (RandomAccessFile file = new RandomAccessFile(new File(directory,
+				"daemon.lock"), "rw"); FileChannel channel = file.getChannel()) {
+			FileLock lock = channel.tryLock();
+			if (lock == null) {
+				// There is a daemon running (or starting)
+				return false;
+			}
+			lock.release();
+		}
+		catch (IOException e) {
+			return false;
+		}
+		List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java")
+				.getPath());
+		command.add("-cp");
+		command.add(launcherClasspath());
+		command.add(ResolutionDaemon.class.getName());
+		if (explicit) {
+			command.add(root.getAbsolutePath());
+		}
+		try {
+			Process process = new ProcessBuilder(command).redirectErrorStream(true)
+					.redirectOutput(new File(directory, "daemon.log")).start();
+			process.getOutputStream().close();
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static String launcherClasspath() {
+		try {
+			File location = new File(ResolutionDaemon.class.getProtectionDomain()
+					.getCodeSource().getLocation().toURI());
+			if (location.isFile()) {
+				// The launcher jar has everything in it
+				return location.getAbsolutePath();
+			}
+		}
+		catch (Exception e) {
+		}
+		return System.getProperty("java.class.path");
+	}
+
+	void run() throws Exception {
+		File directory = this.socket.getParentFile();
+		directory.mkdirs();
+		try (RandomAccessFile file = new RandomAccessFile(new File(directory,
+				"daemon.lock"), "rw"); FileChannel channel = file.getChannel()) {
+			FileLock lock = channel.tryLock();
+			if (lock == null) {
+				// Another daemon got there first
+				return;
+			}
+			Files.deleteIfExists(this.socket.toPath());
+			try (DaemonSockets.Server server = DaemonSockets.get().bind(this.socket)) {
+				this.server = server;
+				serve(server);
+			}
+			finally {
+				Files.deleteIfExists(this.socket.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting requests (the requests in progress are abandoned).
+	 * @throws IOException if the socket cannot be closed
+	 */
+	void stop() throws IOException {
+		DaemonSockets.Server server = this.server;
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	private void serve(final DaemonSockets.Server server) throws IOException {
+		ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+		Thread watchdog = new Thread("thin-daemon-watchdog") {
+			@Override
+			public void run() {
+				while (server.isOpen()) {
+					long idle = System.currentTimeMillis()
+							- ResolutionDaemon.this.lastRequest;
+					try {
+						if (idle >= IDLE_MILLIS) {
+							server.close();
+						}
+						else {
+							Thread.sleep(Math.min(IDLE_MILLIS - idle, 60000L));
+						}
+					}
+					catch (Exception e) {
+						return;
+					}
+				}
+			}
+		};
+		watchdog.setDaemon(true);
+		watchdog.start();
+		try {
+			while (true) {
+				final DaemonSockets.Connection channel = server.accept();
+				if (channel == null) {
+					// Idle for too long
+					return;
+				}
+				this.lastRequest = System.currentTimeMillis();
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(channel);
+					}
+				});
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private void handle(DaemonSockets.Connection channel) {
+		try (DaemonSockets.Connection connection = channel) {
+			DataInputStream input = new DataInputStream(
+					new BufferedInputStream(connection.getInputStream()));
+			DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(connection.getOutputStream()));
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				output.writeBoolean(false);
+				output.writeUTF("Unsupported protocol version");
+				output.flush();
+				return;
+			}
+			Request request = Request.read(input);
+			List<File> files;
+			try {
+				files = resolve(request);
+			}
+			catch (Exception e) {
+				output.writeBoolean(false);
+				output.writeUTF(String.valueOf(e.getMessage()));
+				output.flush();
+				return;
+			}
+			output.writeBoolean(true);
+			output.writeInt(files.size());
+			for (File file : files) {
+				output.writeUTF(file.getAbsolutePath());
+			}
+			output.flush();
+		}
+		catch (IOException e) {
+			// The launcher went away, and will have resolved the classpath itself
+		}
+		finally {
+			this.lastRequest = System.currentTimeMillis();
+		}
+	}
+
+	List<File> resolve(Request request) throws IOException {
+		ArchiveUtils utils = getArchiveUtils(request);
+		File file = new File(request.getArchive());
+		// Launches of the same app share the models, but not the archive
+		JarFile jar = file.isDirectory() ? null : new JarFile(file);
+		try {
+			Archive archive = jar == null ? new ExplodedArchive(file)
+					: new JarFileArchive(jar);
+			synchronized (getLock(file.getAbsolutePath())) {
+				return utils.classpath(getParent(utils, request.getParent()), archive,
+						request.getName(), request.getProfiles());
+			}
+		}
+		finally {
+			if (jar != null) {
+				jar.close();
+			}
+		}
+	}
+
+	private Object getLock(String key) {
+		Object lock = this.locks.get(key);
+		if (lock == null) {
+			lock = new Object();
+			Object existing = this.locks.putIfAbsent(key, lock);
+			if (existing != null) {
+				lock = existing;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * The parent archive for a request, kept open between requests for as long as its
+	 * file does not change (the same path can be rebuilt or redeployed).
+	 */
+	private Archive getParent(ArchiveUtils utils, String path) throws IOException {
+		if (path == null) {
+			return null;
+		}
+		File file = utils.resolveArchiveFile(path).getAbsoluteFile();
+		synchronized (getLock(file.getPath())) {
+			Parent parent = this.parents.get(file.getPath());
+			if (parent != null && parent.isCurrent()) {
+				return parent.getArchive();
+			}
+			Parent current = new Parent(file);
+			this.parents.put(file.getPath(), current);
+			if (parent != null) {
+				parent.close();
+			}
+			return current.getArchive();
+		}
+	}
+
+	private ArchiveUtils getArchiveUtils(Request request) {
+		String key = request.getSettings();
+		ArchiveUtils utils = this.archives.get(key);
+		if (utils == null) {
+			utils = new ArchiveUtils();
+			utils.setProgress(ProgressType.NONE);
+			if (request.getLocations().length > 0) {
+				utils.setLocations(request.getLocations());
+			}
+			utils.setThreads(request.getThreads());
+			utils.setRepositoryThreads(request.getRepositoryThreads());
+			utils.setVirtualThreads(request.isVirtualThreads());
+			utils.setOffline(request.isOffline());
+			utils.setMetadataTtl(request.getMetadataTtl());
+			if (request.isCache()) {
+				utils.setCache(new ClasspathCache(this.root));
+			}
+			ArchiveUtils existing = this.archives.putIfAbsent(key, utils);
+			if (existing != null) {
+				utils = existing;
+			}
+		}
+		return utils;
+	}
+
+	/**
+	 * An open parent archive and the size and time stamp of its file when it was opened.
+	 */
+	private static class Parent {
+
+		private final File file;
+
+		private final String stamp;
+
+		private final JarFile jar;
+
+		private final Archive archive;
+
+		Parent(File file) throws IOException {
+			this.file = file;
+			this.stamp = stamp(file);
+			this.jar = file.isDirectory() ? null : new JarFile(file);
+			this.archive = this.jar == null ? new ExplodedArchive(file)
+					: new JarFileArchive(this.jar);
+		}
+
+		public Archive getArchive() {
+			return this.archive;
+		}
+
+		public boolean isCurrent() {
+			return this.stamp.equals(stamp(this.file));
+		}
+
+		public void close() throws IOException {
+			if (this.jar != null) {
+				this.jar.close();
+			}
+		}
+
+		private static String stamp(File file) {
+			// A directory is read afresh anyway
+			return file.isDirectory() ? "" : file.length() + "@" + file.lastModified();
+		}
+
+	}
+
+	/**
+	 * A request from a launcher for the classpath of an archive. The archive and the
+	 * file locations have to be absolute because the daemon runs in a different
+	 * directory.
+	 */
+	public static class Request {
+
+		private String archive;
+
+		private String parent;
+
+		private String name = "thin";
+
+		private String[] profiles = new String[0];
+
+		private String[] locations = new String[0];
+
+		private boolean cache = true;
+
+		private boolean offline;
+
+		private int threads = ArtifactDownloader.DEFAULT_THREADS;
+
+		private int repositoryThreads = ArtifactDownloader.DEFAULT_REPOSITORY_THREADS;
+
+		private boolean virtualThreads;
+
+		private Integer metadataTtl;
+
+		public String getArchive() {
+			return this.archive;
+		}
+
+		public void setArchive(String archive) {
+			this.archive = archive;
+		}
+
+		public String getParent() {
+			return this.parent;
+		}
+
+		public void setParent(String parent) {
+			this.parent = parent;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String[] getProfiles() {
+			return this.profiles;
+		}
+
+		public void setProfiles(String... profiles) {
+			this.profiles = profiles;
+		}
+
+		public String[] getLocations() {
+			return this.locations;
+		}
+
+		public void setLocations(String... locations) {
+			this.locations = locations;
+		}
+
+		public boolean isCache() {
+			return this.cache;
+		}
+
+		public void setCache(boolean cache) {
+			this.cache = cache;
+		}
+
+		public boolean isOffline() {
+			return this.offline;
+		}
+
+		public void setOffline(boolean offline) {
+			this.offline = offline;
+		}
+
+		public int getThreads() {
+			return this.threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+
+		public int getRepositoryThreads() {
+			return this.repositoryThreads;
+		}
+
+		public void setRepositoryThreads(int repositoryThreads) {
+			this.repositoryThreads = repositoryThreads;
+		}
+
+		public boolean isVirtualThreads() {
+			return this.virtualThreads;
+		}
+
+		public void setVirtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+		}
+
+		public Integer getMetadataTtl() {
+			return this.metadataTtl;
+		}
+
+		public void setMetadataTtl(Integer metadataTtl) {
+			this.metadataTtl = metadataTtl;
+		}
+
+		/**
+		 * The settings that apply to the repository system and the properties files
+		 * (requests with the same settings can share an {@link ArchiveUtils}).
+		 */
+		String getSettings() {
+			return Arrays.asList(this.locations) + "," + this.cache + "," + this.offline
+					+ "," + this.threads + "," + this.repositoryThreads + ","
+					+ this.virtualThreads + "," + this.metadataTtl;
+		}
+
+		void write(DataOutputStream output) throws IOException {
+			output.writeUTF(this.archive);
+			output.writeUTF(this.parent == null ? "" : this.parent);
+			output.writeUTF(this.name);
+			writeArray(output, this.profiles);
+			writeArray(output, this.locations);
+			output.writeBoolean(this.cache);
+			output.writeBoolean(this.offline);
+			output.writeInt(this.threads);
+			output.writeInt(this.repositoryThreads);
+			output.writeBoolean(this.virtualThreads);
+			output.writeInt(this.metadataTtl == null ? -1 : this.metadataTtl);
+		}
+
+		static Request read(DataInputStream input) throws IOException {
+			Request request = new Request();
+			request.setArchive(input.readUTF());
+			String parent = input.readUTF();
+			request.setParent(parent.length() == 0 ? null : parent);
+			request.setName(input.readUTF());
+			request.setProfiles(readArray(input));
+			request.setLocations(readArray(input));
+			request.setCache(input.readBoolean());
+			request.setOffline(input.readBoolean());
+			request.setThreads(input.readInt());
+			request.setRepositoryThreads(input.readInt());
+			request.setVirtualThreads(input.readBoolean());
+			int ttl = input.readInt();
+			request.setMetadataTtl(ttl < 0 ? null : ttl);
+			return request;
+		}
+
+		private static void writeArray(DataOutputStream output, String[] values)
+				throws IOException {
+			output.writeInt(values.length);
+			for (String value : values) {
+				output.writeUTF(value);
+			}
+		}
+
+		private static String[] readArray(DataInputStream input) throws IOException {
+			String[] values = new String[input.readInt()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = input.readUTF();
+			}
+			return values;
+		}
+
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "thin-daemon");
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.boot.loader.archive.Archive;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Runs several thin apps in one JVM. The libraries of a parent archive (see
+ * {@link ThinJarLauncher#THIN_PARENT}) are loaded once, in a class loader that all the
+ * apps share, and each app has its own child class loader with only the libraries that
+ * it adds to the parent (as computed by
+ * {@link ArchiveUtils#subtract(Archive, Archive, String, String...)}). The class
+ * loaders delegate to their parent first, so if an app needs a different version of a
+ * library than the parent has, it gets the parent's version (and the app's version is
+ * left out of its class loader, so the two are never mixed).
+ * <p>
+ * Each app runs its main method in its own thread, and can be stopped independently.
+ * Spring Boot apps are given a unique name for the application admin MBean (and their
+ * JMX domain), which is how they are stopped (after they have finished starting). Other
+ * apps are just interrupted. The class loader of an app is only closed when all the
+ * threads that it started have finished. Anything that is global to the JVM (system
+ * properties, URL handlers, ports) is still shared, so the apps have to be configured
+ * not to clash.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ThinContainer {
+
+	private static final String ADMIN_NAME = "org.springframework.boot:type=Admin,name=";
+
+	private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	private final ArchiveUtils archives;
+
+	private final Archive parent;
+
+	private final String name;
+
+	private final String[] profiles;
+
+	private final IndexedClassLoader shared;
+
+	private final Map<String, App> apps = new LinkedHashMap<>();
+
+	/**
+	 * Create a container with the libraries of the parent archive in a shared class
+	 * loader.
+	 * @param archives the utilities to resolve the libraries with
+	 * @param parent the parent archive
+	 * @param name the name of the properties files with the dependencies
+	 * @param profiles the profiles to apply
+	 */
+	public ThinContainer(ArchiveUtils archives, Archive parent, String name,
+			String... profiles) {
+		this.archives = archives;
+		this.parent = parent;
+		this.name = name;
+		this.profiles = profiles;
+		this.shared = new IndexedClassLoader(
+				urls(archives.extract(parent, name, profiles)),
+				getClass().getClassLoader().getParent());
+	}
+
+	/**
+	 * @return the class loader with the libraries that are shared by all the apps
+	 */
+	public ClassLoader getSharedClassLoader() {
+		return this.shared;
+	}
+
+	/**
+	 * @return the ids of the apps that have been started and not stopped
+	 */
+	public synchronized Set<String> getApps() {
+		return Collections.unmodifiableSet(new LinkedHashSet<>(this.apps.keySet()));
+	}
+
+	/**
+	 * Start an app in its own class loader and thread.
+	 * @param id a unique name for the app
+	 * @param archive the archive with the app in it
+	 * @param args the arguments for the main method
+	 * @throws Exception if the app cannot be started
+	 */
+	public synchronized void start(String id, Archive archive, String... args)
+			throws Exception {
+		if (this.apps.containsKey(id)) {
+			throw new IllegalStateException("App is already running: " + id);
+		}
+		List<URL> urls = new ArrayList<>();
+		urls.add(archive.getUrl());
+		urls.addAll(Arrays.asList(urls(
+				this.archives.subtract(this.parent, archive, this.name, this.profiles))));
+		IndexedClassLoader classLoader = new IndexedClassLoader(
+				ArchiveUtils.addNestedClasses(archive, urls.toArray(new URL[0]),
+						"BOOT-INF/classes/"),
+				this.shared);
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		boolean boot = ClassUtils.isPresent("org.springframework.boot.SpringApplication",
+				classLoader);
+		if (boot) {
+			arguments.add("--spring.application.admin.enabled=true");
+			arguments.add("--spring.application.admin.jmx-name=" + ADMIN_NAME + id);
+			arguments.add("--spring.jmx.default-domain=" + id);
+		}
+		App app = new App(id, ArchiveUtils.findMainClass(archive), classLoader,
+				arguments.toArray(new String[0]), boot);
+		this.apps.put(id, app);
+		app.start();
+	}
+
+	/**
+	 * Stop an app and close its class loader, when all the threads of the app have
+	 * finished (it is left open if they take more than 10 seconds).
+	 * @param id the name of the app
+	 */
+	public void stop(String id) {
+		App app;
+		synchronized (this) {
+			app = this.apps.remove(id);
+		}
+		if (app != null) {
+			app.stop();
+		}
+	}
+
+	/**
+	 * Wait for the main method of an app to finish (Spring Boot apps return from main
+	 * when they have started).
+	 * @param id the name of the app
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitStarted(String id) throws InterruptedException {
+		App app;
+		synchronized (this) {
+			app = this.apps.get(id);
+		}
+		if (app != null) {
+			app.join();
+		}
+	}
+
+	/**
+	 * Stop all the apps (in reverse order) and close the shared class loader.
+	 */
+	public void close() {
+		List<String> ids;
+		synchronized (this) {
+			ids = new ArrayList<>(this.apps.keySet());
+		}
+		Collections.reverse(ids);
+		for (String id : ids) {
+			stop(id);
+		}
+		try {
+			this.shared.close();
+		}
+		catch (IOException e) {
+			// Ignore
+		}
+	}
+
+	private static URL[] urls(List<Archive> archives) {
+		List<URL> urls = new ArrayList<>();
+		for (Archive archive : archives) {
+			try {
+				urls.add(archive.getUrl());
+			}
+			catch (Exception e) {
+				throw new IllegalStateException("Cannot locate archive " + archive, e);
+			}
+		}
+		return urls.toArray(new URL[0]);
+	}
+
+	private static class App implements Runnable {
+
+		private final String id;
+
+		private final String mainClass;
+
+		private final IndexedClassLoader classLoader;
+
+		private final String[] args;
+
+		private final boolean boot;
+
+		private final Thread thread;
+
+		App(String id, String mainClass, IndexedClassLoader classLoader, String[] args,
+				boolean boot) {
+			this.id = id;
+			this.mainClass = mainClass;
+			this.classLoader = classLoader;
+			this.args = args;
+			this.boot = boot;
+			this.thread = new Thread(this, "thin-app-" + id);
+			this.thread.setContextClassLoader(classLoader);
+		}
+
+		void start() {
+			this.thread.start();
+		}
+
+		void join() throws InterruptedException {
+			this.thread.join();
+		}
+
+		@Override
+		public void run() {
+			try {
+				Method main = this.classLoader.loadClass(this.mainClass)
+						.getMethod("main", String[].class);
+				main.invoke(null, new Object[] { this.args });
+			}
+			catch (InvocationTargetException e) {
+				if (!(e.getCause() instanceof InterruptedException)) {
+					System.err.println("App failed: " + this.id);
+					e.getCause().printStackTrace();
+				}
+			}
+			catch (Exception e) {
+				System.err.println("Cannot run app: " + this.id);
+				e.printStackTrace();
+			}
+		}
+
+		void stop() {
+			long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+			if (this.boot) {
+				try {
+					MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+					ObjectName name = new ObjectName(ADMIN_NAME + this.id);
+					awaitStarted(server, name, deadline);
+					if (server.isRegistered(name)) {
+						server.invoke(name, "shutdown", null, null);
+					}
+				}
+				catch (Exception e) {
+					// Already stopping
+				}
+			}
+			if (this.thread.isAlive()) {
+				this.thread.interrupt();
+			}
+			boolean stopped = true;
+			for (Thread thread : getThreads()) {
+				stopped = join(thread, deadline) && stopped;
+			}
+			if (!stopped) {
+				System.err.println("App did not stop within " + STOP_TIMEOUT_MILLIS
+						+ "ms, leaving its class loader open: " + this.id);
+				return;
+			}
+			try {
+				this.classLoader.close();
+			}
+			catch (IOException e) {
+				// Ignore
+			}
+		}
+
+		/**
+		 * Wait for a Spring Boot app to finish starting, so that it can be shut down
+		 * cleanly: until its main method returns, or the admin MBean says that it is
+		 * ready, or the main thread is waiting for something outside of
+		 * <code>SpringApplication</code> (so it is not starting an app at all).
+		 */
+		private void awaitStarted(MBeanServer server, ObjectName name, long deadline)
+				throws Exception {
+			while (this.thread.isAlive() && System.currentTimeMillis() < deadline) {
+				if (server.isRegistered(name)
+						&& Boolean.TRUE.equals(server.getAttribute(name, "Ready"))) {
+					return;
+				}
+				if (isIdle()) {
+					return;
+				}
+				join(this.thread, Math.min(deadline, System.currentTimeMillis() + 20));
+			}
+		}
+
+		private boolean isIdle() {
+			Thread.State state = this.thread.getState();
+			if (state != Thread.State.WAITING && state != Thread.State.TIMED_WAITING) {
+				return false;
+			}
+			for (StackTraceElement element : this.thread.getStackTrace()) {
+				if (element.getClassName()
+						.startsWith("org.springframework.boot.SpringApplication")) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * The app thread and any live threads that it started (they inherit its context
+		 * class loader).
+		 */
+		private List<Thread> getThreads() {
+			List<Thread> threads = new ArrayList<>();
+			threads.add(this.thread);
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				if (thread != this.thread && thread != Thread.currentThread()
+						&& thread.getContextClassLoader() == this.classLoader) {
+					threads.add(thread);
+				}
+			}
+			return threads;
+		}
+
+		private static boolean join(Thread thread, long deadline) {
+			long wait = deadline - System.currentTimeMillis();
+			try {
+				if (wait > 0) {
+					thread.join(wait);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return !thread.isAlive();
+		}
+
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.StringUtils;
+
+/**
+ * Main class for running several thin apps in one JVM with a {@link ThinContainer}.
+ * The libraries of the {@link ThinJarLauncher#THIN_PARENT} are shared by all the apps,
+ * and the apps are listed as <code>thin.app.{id}={archive}</code> (with optional
+ * arguments in <code>thin.app.{id}.args</code>, comma separated). The archives are
+ * files or "maven://..." coordinates, like {@link ThinJarLauncher#THIN_ARCHIVE}. The
+ * usual options for the resolution ({@link ThinJarLauncher#THIN_ROOT},
+ * {@link ThinJarLauncher#THIN_NAME}, {@link ThinJarLauncher#THIN_PROFILE},
+ * {@link ThinJarLauncher#THIN_OFFLINE}) apply to all the apps.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ThinContainerLauncher {
+
+	/**
+	 * Prefix for the properties that list the apps to run in the container.
+	 */
+	public static final String THIN_APP = "thin.app.";
+
+	private StandardEnvironment environment = new StandardEnvironment();
+
+	public static void main(String[] args) throws Exception {
+		new ThinContainerLauncher().launch(args);
+	}
+
+	private void launch(String[] args) throws Exception {
+		SimpleCommandLinePropertySource commandLine = new SimpleCommandLinePropertySource(
+				"commandArgs", args);
+		this.environment.getPropertySources().addFirst(commandLine);
+		String root = resolve(ThinJarLauncher.THIN_ROOT, "");
+		if (StringUtils.hasText(root)) {
+			// There is a grape root that is used by the aether engine internally
+			System.setProperty("grape.root", root);
+		}
+		String parent = resolve(ThinJarLauncher.THIN_PARENT, "");
+		if (!StringUtils.hasText(parent)) {
+			throw new IllegalArgumentException(
+					"A container needs a parent (" + ThinJarLauncher.THIN_PARENT + ")");
+		}
+		ArchiveUtils archives = new ArchiveUtils();
+		archives.setProgress(
+				!"false".equals(resolve("debug", "false")) ? ProgressType.DETAILED
+						: ProgressType.SUMMARY);
+		archives.setOffline(
+				!"false".equals(resolve(ThinJarLauncher.THIN_OFFLINE, "false")));
+		String locations = resolve(ThinJarLauncher.THIN_LOCATION, "");
+		if (StringUtils.hasText(locations)) {
+			archives.setLocations(locations.split(","));
+		}
+		Map<String, String> apps = getApps();
+		if (apps.isEmpty()) {
+			throw new IllegalArgumentException(
+					"No apps to run (use " + THIN_APP + "{id}={archive})");
+		}
+		final ThinContainer container = new ThinContainer(archives,
+				archives.resolveArchive(parent),
+				resolve(ThinJarLauncher.THIN_NAME, "thin"),
+				resolve(ThinJarLauncher.THIN_PROFILE, "").split(","));
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				container.close();
+			}
+		});
+		try {
+			for (Map.Entry<String, String> app : apps.entrySet()) {
+				String id = app.getKey();
+				String appArgs = resolve(THIN_APP + id + ".args", "");
+				container.start(id, archives.resolveArchive(app.getValue()),
+						StringUtils.hasText(appArgs) ? appArgs.split(",")
+								: new String[0]);
+			}
+		}
+		catch (Exception e) {
+			// Don't leave the apps that did start running without the others
+			container.close();
+			throw e;
+		}
+	}
+
+	private Map<String, String> getApps() {
+		Map<String, String> apps = new LinkedHashMap<>();
+		for (PropertySource<?> source : this.environment.getPropertySources()) {
+			if (!(source instanceof EnumerablePropertySource)) {
+				continue;
+			}
+			for (String name : ((EnumerablePropertySource<?>) source)
+					.getPropertyNames()) {
+				if (name.startsWith(THIN_APP) && !name.endsWith(".args")
+						&& !apps.containsKey(name.substring(THIN_APP.length()))) {
+					apps.put(name.substring(THIN_APP.length()),
+							this.environment.getProperty(name));
+				}
+			}
+		}
+		return apps;
+	}
+
+	private String resolve(String key, String defaultValue) {
+		return this.environment.resolvePlaceholders("${" + key + ":" + defaultValue + "}");
+	}
+
+}
@@ -17,6 +17,7 @@
 package org.springframework.boot.loader.thin;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +30,7 @@ import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
 import org.springframework.core.env.MutablePropertySources;
 import org.springframework.core.env.SimpleCommandLinePropertySource;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.FileCopyUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -55,6 +57,28 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 	 */
 	public static final String THIN_CLASSPATH = "thin.classpath";
 
+	/**
+	 * The format of the output in a "classpath run": "path" (the default) for a path
+	 * that can be used in <code>java -cp</code> (without the app itself), or "argfile"
+	 * for a Java argument file (<code>java @file</code>) with a <code>-cp</code> option
+	 * including the app, for classpaths that are too long for the command line.
+	 */
+	public static final String THIN_CLASSPATH_FORMAT = "thin.classpath.format";
+
+	/**
+	 * A file to write the output of a "classpath run" to, instead of stdout.
+	 */
+	public static final String THIN_CLASSPATH_FILE = "thin.classpath.file";
+
+	/**
+	 * System property to signal a "lock run" where dependencies are resolved but the
+	 * main method is not executed and the output (on stdout) is a lock file listing the
+	 * resolved dependencies and their checksums. If the result is packaged in the archive
+	 * as <code>META-INF/thin.lock</code> (or <code>thin-{profile}.lock</code>) it is
+	 * used to resolve the dependencies without recomputing them.
+	 */
+	public static final String THIN_LOCK = "thin.lock";
+
 	/**
 	 * System property holding the path to the root directory, where Maven repository and
 	 * settings live. Defaults to <code>${user.home}/.m2</code>.
@@ -93,16 +117,93 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 	 */
 	public static final String THIN_PROFILE = "thin.profile";
 
+	/**
+	 * Flag to enable or disable the persistent cache of resolved classpaths in
+	 * <code>${thin.root}/thin/classpath</code>. Defaults to true.
+	 */
+	public static final String THIN_CACHE = "thin.cache";
+
+	/**
+	 * The maximum number of artifacts to download concurrently. Defaults to 10.
+	 */
+	public static final String THIN_THREADS = "thin.threads";
+
+	/**
+	 * The maximum number of concurrent downloads from any one repository. Defaults to 5.
+	 */
+	public static final String THIN_REPOSITORY_THREADS = "thin.repository.threads";
+
+	/**
+	 * Flag to run downloads in virtual threads, if the JVM supports them. Defaults to
+	 * false.
+	 */
+	public static final String THIN_VIRTUAL_THREADS = "thin.virtual.threads";
+
+	/**
+	 * Flag to resolve only from the local repository, without setting up any remote
+	 * repositories. Defaults to false.
+	 */
+	public static final String THIN_OFFLINE = "thin.offline";
+
+	/**
+	 * The number of minutes between checks for new snapshots and new versions in
+	 * version ranges. Defaults to the repository update policy (daily).
+	 */
+	public static final String THIN_METADATA_TTL = "thin.metadata.ttl";
+
+	/**
+	 * A file to write a JSON report to, with the time spent in each phase of the launch
+	 * and statistics for the caches and repositories.
+	 */
+	public static final String THIN_REPORT = "thin.report";
+
+	/**
+	 * Flag to say that the application class loader should index the packages in its
+	 * classpath, so that lookups for classes that are not there are fast. The index is
+	 * cached in <code>${thin.root}/thin/classloader</code> if the classpath cache is
+	 * enabled. Defaults to true.
+	 */
+	public static final String THIN_INDEX = "thin.index";
+
+	/**
+	 * Flag to say that the app should run in a new JVM with a class data sharing
+	 * archive for its classpath, which is created (in <code>${thin.root}/thin/cds</code>)
+	 * on the first launch and shared by later ones. The launcher JVM stays running (with
+	 * a small heap, since it lets go of everything it used to resolve the classpath)
+	 * until the app exits, and passes on its exit code and any signal to stop. Needs
+	 * Java 10 or better, and a classpath of jar files. Defaults to false.
+	 */
+	public static final String THIN_CDS = "thin.cds";
+
+	/**
+	 * Flag to say that the classpath should be resolved by a daemon process that keeps
+	 * the repository system and the parsed models warm between launches (one per thin
+	 * root, started in the background if it isn't running). The launcher falls back to
+	 * resolving the classpath itself if the daemon is not available. Needs Java 16 or
+	 * better (for Unix domain sockets). Defaults to false.
+	 */
+	public static final String THIN_DAEMON = "thin.daemon";
+
 	private ArchiveUtils archives = new ArchiveUtils();
 	private StandardEnvironment environment = new StandardEnvironment();
 	private boolean debug;
+	private final LaunchReport report;
+	private File indexCache;
+	private File daemon;
+	private boolean explicitRoot;
 
 	public static void main(String[] args) throws Exception {
 		new ThinJarLauncher(args).launch(args);
 	}
 
 	protected ThinJarLauncher(String[] args) throws Exception {
-		super(computeArchive(args));
+		this(args, new LaunchReport());
+	}
+
+	private ThinJarLauncher(String[] args, LaunchReport report) throws Exception {
+		super(computeArchive(args, report));
+		this.report = report;
+		this.archives.setReport(report);
 	}
 
 	@Override
@@ -112,7 +213,9 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		String root = environment.resolvePlaceholders("${" + THIN_ROOT + ":}");
 		boolean classpath = !"false".equals(
 				environment.resolvePlaceholders("${" + THIN_CLASSPATH + ":false}"));
-		if (classpath) {
+		boolean lock = !"false"
+				.equals(environment.resolvePlaceholders("${" + THIN_LOCK + ":false}"));
+		if (classpath || lock) {
 			this.debug = false;
 			this.archives.setProgress(ProgressType.NONE);
 		}
@@ -128,9 +231,54 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 			// internally
 			System.setProperty("grape.root", root);
 		}
+		String locations = environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_LOCATION + ":}");
+		if (StringUtils.hasText(locations)) {
+			this.archives.setLocations(locations.split(","));
+		}
+		String threads = environment.resolvePlaceholders("${" + THIN_THREADS + ":}");
+		if (StringUtils.hasText(threads)) {
+			this.archives.setThreads(Integer.valueOf(threads));
+		}
+		threads = environment
+				.resolvePlaceholders("${" + THIN_REPOSITORY_THREADS + ":}");
+		if (StringUtils.hasText(threads)) {
+			this.archives.setRepositoryThreads(Integer.valueOf(threads));
+		}
+		this.archives.setVirtualThreads(!"false".equals(environment
+				.resolvePlaceholders("${" + THIN_VIRTUAL_THREADS + ":false}")));
+		this.archives.setOffline(!"false".equals(
+				environment.resolvePlaceholders("${" + THIN_OFFLINE + ":false}")));
+		String ttl = environment.resolvePlaceholders("${" + THIN_METADATA_TTL + ":}");
+		if (StringUtils.hasText(ttl)) {
+			this.archives.setMetadataTtl(Integer.valueOf(ttl));
+		}
+		if (!"false".equals(
+				environment.resolvePlaceholders("${" + THIN_CACHE + ":true}"))) {
+			this.archives.setCache(new ClasspathCache(getRoot(root)));
+			this.indexCache = new File(getRoot(root), "thin/classloader");
+		}
+		if (!"false".equals(
+				environment.resolvePlaceholders("${" + THIN_DAEMON + ":false}"))) {
+			if (DaemonSockets.get().isSupported()) {
+				this.daemon = getRoot(root);
+				this.explicitRoot = StringUtils.hasText(root);
+			}
+			else if (this.debug) {
+				System.out.println("The resolution daemon is not supported on Java "
+						+ System.getProperty("java.version"));
+			}
+		}
 		if (classpath) {
-			List<Archive> archives = getClassPathArchives();
-			System.out.println(classpath(archives));
+			writeClasspath(this.archives.classpath(getParentArchive(), getArchive(),
+					getName(), getProfiles()));
+			writeReport();
+			return;
+		}
+		if (lock) {
+			this.archives.lock(getArchive(), getName(), getProfiles())
+					.write(System.out);
+			writeReport();
 			return;
 		}
 		if (!"false".equals(
@@ -140,11 +288,108 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 				System.out.println("Downloaded dependencies"
 						+ (!StringUtils.hasText(root) ? "" : " to " + root));
 			}
+			writeReport();
 			return;
 		}
+		if (!"false".equals(
+				environment.resolvePlaceholders("${" + THIN_CDS + ":false}"))) {
+			if (launchWithClassDataSharing(getRoot(root), args)) {
+				return;
+			}
+		}
 		super.launch(args);
 	}
 
+	private boolean launchWithClassDataSharing(File root, String[] args)
+			throws Exception {
+		List<File> classpath = new ArrayList<>();
+		if (ArchiveUtils.addNestedClasses(getArchive(), new URL[0],
+				"BOOT-INF/classes/").length > 0) {
+			// Nested classes cannot be shared
+			classpath = null;
+		}
+		else {
+			for (Archive archive : getClassPathArchives()) {
+				classpath.add(ArchiveUtils.getArchiveRoot(archive));
+			}
+		}
+		ClassDataSharing cds = classpath == null ? null
+				: new ClassDataSharing(root, classpath);
+		if (cds == null || !cds.isSupported()) {
+			if (this.debug) {
+				System.out.println("Class data sharing is not supported for "
+						+ getArchive() + " on Java " + ClassDataSharing.javaVersion());
+			}
+			return false;
+		}
+		String mainClass = getMainClass();
+		List<String> command = cds.command(mainClass, args);
+		if (this.debug) {
+			System.out.println("Launching with class data sharing: " + command);
+		}
+		this.report.setAttribute("mainClass", mainClass);
+		this.report.setAttribute("cds", cds.getArchive().getPath());
+		writeReport();
+		final Process process = new ProcessBuilder(command).inheritIO().start();
+		final ClassDataSharing finisher = cds;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				// Give the app a chance to shut down (and maybe dump its archive)
+				process.destroy();
+				try {
+					process.waitFor();
+					finisher.finish();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		// This JVM only waits for the app from now on, so let go of the resolver (the
+		// repository system, models and caches) so it can be garbage collected
+		this.archives = null;
+		int status = process.waitFor();
+		cds.finish();
+		System.exit(status);
+		return true;
+	}
+
+	@Override
+	protected void launch(String[] args, String mainClass, ClassLoader classLoader)
+			throws Exception {
+		this.report.setAttribute("mainClass", mainClass);
+		// Everything from the start of the JVM up to the application main method
+		this.report.record(LaunchReport.UPTIME,
+				ManagementFactory.getRuntimeMXBean().getUptime());
+		writeReport();
+		super.launch(args, mainClass, classLoader);
+	}
+
+	private void writeReport() {
+		String file = environment.resolvePlaceholders("${" + THIN_REPORT + ":}");
+		if (!StringUtils.hasText(file)) {
+			return;
+		}
+		try {
+			this.report.setAttribute("archive", String.valueOf(getArchive()));
+			this.report.write(new File(file));
+		}
+		catch (Exception e) {
+			// Never fail a launch because of the report
+			if (this.debug) {
+				System.err.println("Cannot write report to " + file + ": " + e);
+			}
+		}
+	}
+
+	private File getRoot(String root) {
+		if (StringUtils.hasText(root)) {
+			return new File(root);
+		}
+		return new File(System.getProperty("user.home"), ".m2");
+	}
+
 	private String[] removeThinArgs(String[] args) {
 		List<String> result = new ArrayList<>();
 		boolean escaped = false;
@@ -161,23 +406,53 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		return result.toArray(new String[0]);
 	}
 
-	private String classpath(List<Archive> archives) throws Exception {
+	private void writeClasspath(List<File> files) throws Exception {
+		String format = environment
+				.resolvePlaceholders("${" + THIN_CLASSPATH_FORMAT + ":path}");
+		String output;
+		if ("argfile".equals(format)) {
+			files = new ArrayList<>(files);
+			files.add(0, ArchiveUtils.getArchiveRoot(getArchive()));
+			output = "-cp\n" + quote(classpath(files)) + "\n";
+		}
+		else if ("path".equals(format)) {
+			output = classpath(files) + "\n";
+		}
+		else {
+			throw new IllegalArgumentException("Unknown classpath format: " + format
+					+ " (use 'path' or 'argfile')");
+		}
+		String file = environment
+				.resolvePlaceholders("${" + THIN_CLASSPATH_FILE + ":}");
+		if (StringUtils.hasText(file)) {
+			File target = new File(file).getAbsoluteFile();
+			target.getParentFile().mkdirs();
+			FileCopyUtils.copy(output.getBytes("UTF-8"), target);
+		}
+		else {
+			System.out.print(output);
+		}
+	}
+
+	private String classpath(List<File> files) throws Exception {
 		StringBuilder builder = new StringBuilder();
 		String separator = System.getProperty("path.separator");
-		boolean first = true;
-		for (Archive archive : archives) {
-			if (!first) {
-				first = false;
-				continue;
-			}
+		for (File file : files) {
 			if (builder.length() > 0) {
 				builder.append(separator);
 			}
-			builder.append(new File(archive.getUrl().toURI()).getCanonicalPath());
+			builder.append(file.getCanonicalPath());
 		}
 		return builder.toString();
 	}
 
+	/**
+	 * Quote a value for a Java argument file (backslashes are escape characters).
+	 */
+	private static String quote(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
 	private void addCommandLineProperties(String[] args) {
 		if (args == null || args.length == 0) {
 			return;
@@ -195,9 +470,20 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 
 	@Override
 	protected ClassLoader createClassLoader(URL[] urls) throws Exception {
-		return new LaunchedURLClassLoader(
-				ArchiveUtils.addNestedClasses(getArchive(), urls, "BOOT-INF/classes/"),
-				getClass().getClassLoader().getParent());
+		LaunchReport.Timer timer = this.report.start(LaunchReport.CLASSLOADER);
+		try {
+			urls = ArchiveUtils.addNestedClasses(getArchive(), urls,
+					"BOOT-INF/classes/");
+			ClassLoader parent = getClass().getClassLoader().getParent();
+			if (!"false".equals(
+					environment.resolvePlaceholders("${" + THIN_INDEX + ":true}"))) {
+				return new IndexedClassLoader(urls, parent, this.indexCache);
+			}
+			return new LaunchedURLClassLoader(urls, parent);
+		}
+		finally {
+			timer.stop();
+		}
 	}
 
 	@Override
@@ -206,30 +492,130 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		if (StringUtils.hasText(mainClass)) {
 			return mainClass;
 		}
-		return ArchiveUtils.findMainClass(getArchive());
+		LaunchReport.Timer timer = this.report.start(LaunchReport.MAIN_CLASS);
+		try {
+			return ArchiveUtils.findMainClass(getArchive());
+		}
+		finally {
+			timer.stop();
+		}
 	}
 
 	@Override
 	protected List<Archive> getClassPathArchives() throws Exception {
+		String name = getName();
+		String[] profiles = getProfiles();
+		List<File> files = resolveWithDaemon(name, profiles);
+		if (files != null) {
+			List<Archive> archives = this.archives.archives(files);
+			archives.add(0, getArchive());
+			return archives;
+		}
+		Archive parentArchive = getParentArchive();
+		List<Archive> archives = this.archives.combine(parentArchive, getArchive(), name,
+				profiles);
+		return archives;
+	}
+
+	/**
+	 * Ask the resolution daemon for the classpath, and start one for next time if it
+	 * isn't running.
+	 * @return the classpath (without the archive), or null if the daemon is not enabled
+	 * or not available
+	 */
+	private List<File> resolveWithDaemon(String name, String[] profiles) {
+		if (this.daemon == null) {
+			return null;
+		}
+		LaunchReport.Timer timer = this.report.start(LaunchReport.DAEMON);
+		try {
+			List<File> files = ResolutionDaemon.classpath(this.daemon,
+					createDaemonRequest(name, profiles));
+			if (files != null) {
+				this.report.increment("daemon.hits");
+				return files;
+			}
+			this.report.increment("daemon.misses");
+			if (ResolutionDaemon.start(this.daemon, this.explicitRoot) && this.debug) {
+				System.out.println("Started resolution daemon in " + this.daemon);
+			}
+		}
+		catch (Exception e) {
+			this.report.increment("daemon.failures");
+			if (this.debug) {
+				System.err.println("Cannot resolve classpath in daemon: " + e);
+			}
+		}
+		finally {
+			timer.stop();
+		}
+		return null;
+	}
+
+	private ResolutionDaemon.Request createDaemonRequest(String name,
+			String[] profiles) {
+		ResolutionDaemon.Request request = new ResolutionDaemon.Request();
+		request.setArchive(
+				ArchiveUtils.getArchiveRoot(getArchive()).getAbsolutePath());
 		String parent = environment
 				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PARENT + ":}");
-		String name = environment
-				.resolvePlaceholders("${" + ThinJarLauncher.THIN_NAME + ":thin}");
-		String locations = environment
-				.resolvePlaceholders("${" + ThinJarLauncher.THIN_LOCATION + ":}");
-		String[] profiles = environment
-				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PROFILE + ":}")
-				.split(",");
-		Archive parentArchive = null;
 		if (StringUtils.hasText(parent)) {
-			parentArchive = ArchiveUtils.getArchive(parent);
+			// The daemon runs in a different directory
+			request.setParent(new File(parent).exists()
+					? new File(parent).getAbsolutePath() : parent);
 		}
-		if (StringUtils.hasText(locations)) {
-			this.archives.setLocations(locations.split(","));
+		request.setName(name);
+		request.setProfiles(profiles);
+		List<String> locations = new ArrayList<>();
+		for (String location : this.archives.getLocations()) {
+			if (location.startsWith("file:")
+					&& !new File(location.substring("file:".length())).isAbsolute()) {
+				location = "file:" + new File(location.substring("file:".length()))
+						.getAbsolutePath();
+			}
+			locations.add(location);
 		}
-		List<Archive> archives = this.archives.combine(parentArchive, getArchive(), name,
-				profiles);
-		return archives;
+		request.setLocations(locations.toArray(new String[0]));
+		request.setCache(!"false".equals(
+				environment.resolvePlaceholders("${" + THIN_CACHE + ":true}")));
+		request.setOffline(!"false".equals(
+				environment.resolvePlaceholders("${" + THIN_OFFLINE + ":false}")));
+		String threads = environment.resolvePlaceholders("${" + THIN_THREADS + ":}");
+		if (StringUtils.hasText(threads)) {
+			request.setThreads(Integer.valueOf(threads));
+		}
+		threads = environment
+				.resolvePlaceholders("${" + THIN_REPOSITORY_THREADS + ":}");
+		if (StringUtils.hasText(threads)) {
+			request.setRepositoryThreads(Integer.valueOf(threads));
+		}
+		request.setVirtualThreads(!"false".equals(environment
+				.resolvePlaceholders("${" + THIN_VIRTUAL_THREADS + ":false}")));
+		String ttl = environment.resolvePlaceholders("${" + THIN_METADATA_TTL + ":}");
+		if (StringUtils.hasText(ttl)) {
+			request.setMetadataTtl(Integer.valueOf(ttl));
+		}
+		return request;
+	}
+
+	private Archive getParentArchive() {
+		String parent = environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PARENT + ":}");
+		if (StringUtils.hasText(parent)) {
+			return this.archives.resolveArchive(parent);
+		}
+		return null;
+	}
+
+	private String getName() {
+		return environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_NAME + ":thin}");
+	}
+
+	private String[] getProfiles() {
+		return environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PROFILE + ":}")
+				.split(",");
 	}
 
 	@Override
@@ -237,9 +623,29 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		return false;
 	}
 
+	private static Archive computeArchive(String[] args, LaunchReport report)
+			throws Exception {
+		LaunchReport.Timer timer = report.start(LaunchReport.ARCHIVE);
+		try {
+			return computeArchive(args);
+		}
+		finally {
+			timer.stop();
+		}
+	}
+
 	private static Archive computeArchive(String[] args) throws Exception {
 		String path = getProperty(THIN_ARCHIVE);
+		// The archive is located before the environment is set up, but an offline
+		// launch still has to stay away from the remote repositories
+		String offline = getProperty(THIN_OFFLINE);
 		for (String arg : args) {
+			if (arg.equals("--" + THIN_OFFLINE)) {
+				offline = "true";
+			}
+			else if (arg.startsWith("--" + THIN_OFFLINE + "=")) {
+				offline = arg.substring(THIN_OFFLINE.length() + 3);
+			}
 			String prefix = "--" + THIN_ARCHIVE;
 			if (arg.startsWith(prefix)) {
 				// You can always override --thin.archive on the command line
@@ -252,7 +658,8 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 				}
 			}
 		}
-		return ArchiveUtils.getArchive(path);
+		return ArchiveUtils.getArchive(path,
+				offline != null && !"false".equals(offline));
 	}
 
 	static String getProperty(String key) {
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.internal.impl.SimpleLocalRepositoryManagerFactory;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalMetadataRegistration;
+import org.eclipse.aether.repository.LocalMetadataRequest;
+import org.eclipse.aether.repository.LocalMetadataResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.NoLocalRepositoryManagerException;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A local repository manager that finds an artifact with a single <code>stat</code> of
+ * its file, and keeps no other state. Unlike the default (enhanced) manager, it does not
+ * read or write the <code>_remote.repositories</code> tracking files, so a jar
+ * downloaded from a mirror is not downloaded again when another repository asks for it.
+ * Metadata and the repository layout are delegated to the simple manager from Aether.
+ *
+ * @author Dave Syer
+ *
+ */
+class ThinLocalRepositoryManager implements LocalRepositoryManager {
+
+	private final LocalRepositoryManager delegate;
+
+	private final File basedir;
+
+	ThinLocalRepositoryManager(RepositorySystemSession session, File basedir) {
+		this.basedir = basedir;
+		try {
+			this.delegate = new SimpleLocalRepositoryManagerFactory().newInstance(session,
+					new LocalRepository(basedir, "simple"));
+		}
+		catch (NoLocalRepositoryManagerException e) {
+			throw new IllegalStateException("Cannot create local repository", e);
+		}
+	}
+
+	@Override
+	public LocalRepository getRepository() {
+		return this.delegate.getRepository();
+	}
+
+	@Override
+	public String getPathForLocalArtifact(Artifact artifact) {
+		return this.delegate.getPathForLocalArtifact(artifact);
+	}
+
+	@Override
+	public String getPathForRemoteArtifact(Artifact artifact, RemoteRepository repository,
+			String context) {
+		return this.delegate.getPathForRemoteArtifact(artifact, repository, context);
+	}
+
+	@Override
+	public String getPathForLocalMetadata(Metadata metadata) {
+		return this.delegate.getPathForLocalMetadata(metadata);
+	}
+
+	@Override
+	public String getPathForRemoteMetadata(Metadata metadata, RemoteRepository repository,
+			String context) {
+		return this.delegate.getPathForRemoteMetadata(metadata, repository, context);
+	}
+
+	@Override
+	public LocalArtifactResult find(RepositorySystemSession session,
+			LocalArtifactRequest request) {
+		// Downloaded snapshots are stored under their timestamped version
+		File file = new File(this.basedir,
+				getPathForRemoteArtifact(request.getArtifact(), null, ""));
+		LocalArtifactResult result = new LocalArtifactResult(request);
+		if (file.isFile()) {
+			result.setFile(file);
+			result.setAvailable(true);
+		}
+		return result;
+	}
+
+	@Override
+	public void add(RepositorySystemSession session,
+			LocalArtifactRegistration request) {
+		// Nothing to track: the file is all there is
+	}
+
+	@Override
+	public LocalMetadataResult find(RepositorySystemSession session,
+			LocalMetadataRequest request) {
+		return this.delegate.find(session, request);
+	}
+
+	@Override
+	public void add(RepositorySystemSession session,
+			LocalMetadataRegistration request) {
+		this.delegate.add(session, request);
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(getRepository());
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events for the launcher. Only loaded by {@link LaunchEvents} if the
+ * <code>jdk.jfr</code> API is available. When there is no recording (or the events are
+ * disabled in the recording settings) the cost is an allocation and a flag check.
+ *
+ * @author Dave Syer
+ *
+ */
+class FlightRecorderEvents extends LaunchEvents {
+
+	@Override
+	public Object begin(String phase) {
+		PhaseEvent event = new PhaseEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void end(Object token) {
+		if (token instanceof PhaseEvent) {
+			PhaseEvent event = (PhaseEvent) token;
+			event.end();
+			if (event.shouldCommit()) {
+				event.commit();
+			}
+		}
+	}
+
+	@Override
+	public void instrument(DefaultRepositorySystemSession session) {
+		session.setTransferListener(ChainedTransferListener
+				.newInstance(session.getTransferListener(), new TransferRecorder()));
+	}
+
+	@Name("org.springframework.boot.thin.Phase")
+	@Label("Launch Phase")
+	@Category({ "Spring Boot", "Thin Launcher" })
+	@Description("A phase of the thin launcher, before the application starts")
+	static class PhaseEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+	}
+
+	@Name("org.springframework.boot.thin.Transfer")
+	@Label("Artifact Transfer")
+	@Category({ "Spring Boot", "Thin Launcher" })
+	@Description("A download from a remote repository")
+	static class ArtifactTransferEvent extends Event {
+
+		@Label("Artifact")
+		String artifact;
+
+		@Label("Repository")
+		String repository;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+		@Label("Result")
+		String result;
+
+	}
+
+	/**
+	 * Begins an event when a transfer starts and commits it when the transfer finishes.
+	 */
+	private static class TransferRecorder extends AbstractTransferListener {
+
+		private final ConcurrentMap<TransferResource, ArtifactTransferEvent> events = new ConcurrentHashMap<>();
+
+		@Override
+		public void transferInitiated(TransferEvent event) {
+			ArtifactTransferEvent transfer = new ArtifactTransferEvent();
+			if (!transfer.isEnabled()) {
+				return;
+			}
+			TransferResource resource = event.getResource();
+			transfer.artifact = resource.getResourceName();
+			transfer.repository = resource.getRepositoryUrl();
+			transfer.begin();
+			this.events.put(resource, transfer);
+		}
+
+		@Override
+		public void transferSucceeded(TransferEvent event) {
+			commit(event, "success");
+		}
+
+		@Override
+		public void transferFailed(TransferEvent event) {
+			Exception exception = event.getException();
+			commit(event,
+					exception instanceof ArtifactNotFoundException
+							|| exception instanceof MetadataNotFoundException
+									? "not found" : "failed");
+		}
+
+		private void commit(TransferEvent event, String result) {
+			ArtifactTransferEvent transfer = this.events.remove(event.getResource());
+			if (transfer == null) {
+				return;
+			}
+			transfer.end();
+			if (transfer.shouldCommit()) {
+				transfer.bytes = event.getTransferredBytes();
+				transfer.result = result;
+				transfer.commit();
+			}
+		}
+
+	}
+
+}
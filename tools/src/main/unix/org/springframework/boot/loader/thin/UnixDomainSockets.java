@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * {@link DaemonSockets} with the Unix domain socket channels from Java 16. Only loaded if
+ * the JVM has them.
+ *
+ * @author Dave Syer
+ *
+ */
+class UnixDomainSockets extends DaemonSockets {
+
+	@Override
+	public boolean isSupported() {
+		return true;
+	}
+
+	@Override
+	public Connection connect(File socket) throws IOException {
+		SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+		}
+		catch (IOException e) {
+			// Stale socket (the daemon died)
+			channel.close();
+			return null;
+		}
+		return new ChannelConnection(channel);
+	}
+
+	@Override
+	public Server bind(File socket) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel
+				.open(StandardProtocolFamily.UNIX);
+		try {
+			server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+			try {
+				// Only the owner can ask for a classpath
+				Files.setPosixFilePermissions(socket.toPath(),
+						PosixFilePermissions.fromString("rw-------"));
+			}
+			catch (UnsupportedOperationException e) {
+			}
+		}
+		catch (IOException e) {
+			server.close();
+			throw e;
+		}
+		return new ChannelServer(server);
+	}
+
+	private static class ChannelConnection implements Connection {
+
+		private final SocketChannel channel;
+
+		ChannelConnection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return Channels.newInputStream(this.channel);
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return Channels.newOutputStream(this.channel);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+		}
+
+	}
+
+	private static class ChannelServer implements Server {
+
+		private final ServerSocketChannel server;
+
+		ChannelServer(ServerSocketChannel server) {
+			this.server = server;
+		}
+
+		@Override
+		public Connection accept() throws IOException {
+			try {
+				return new ChannelConnection(this.server.accept());
+			}
+			catch (ClosedChannelException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.server.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.server.close();
+		}
+
+	}
+
+}
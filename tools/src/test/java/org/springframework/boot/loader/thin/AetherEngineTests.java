@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.boot.cli.compiler.grape.DependencyResolutionContext;
+import org.springframework.boot.cli.compiler.grape.RepositoryConfiguration;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class AetherEngineTests {
+
+	private static final String PATH = "com/example/app/1.0.0-SNAPSHOT/";
+
+	private File root = new File("target/engine");
+
+	private File remote = new File(this.root, "remote");
+
+	private String grapeRoot;
+
+	@Before
+	public void init() {
+		FileSystemUtils.deleteRecursively(this.root);
+		this.grapeRoot = System.getProperty("grape.root");
+		System.setProperty("grape.root", new File(this.root, "local").getAbsolutePath());
+	}
+
+	@After
+	public void close() {
+		if (this.grapeRoot != null) {
+			System.setProperty("grape.root", this.grapeRoot);
+		}
+		else {
+			System.clearProperty("grape.root");
+		}
+	}
+
+	@Test
+	public void snapshotMetadataTtl() throws Exception {
+		deploy(1);
+		assertThat(resolve(60)).isEqualTo("app1");
+		deploy(2);
+		// Checked recently, so the new snapshot is not seen
+		assertThat(resolve(60)).isEqualTo("app1");
+		assertThat(resolve(0)).isEqualTo("app2");
+	}
+
+	private String resolve(int ttl) throws Exception {
+		List<File> files = engine(ttl).resolve(Arrays.asList(new Dependency(
+				new DefaultArtifact("com.example:app:1.0.0-SNAPSHOT"), "runtime")),
+				false);
+		return new String(FileCopyUtils.copyToByteArray(files.get(0)));
+	}
+
+	private AetherEngine engine(int ttl) {
+		AetherEngine engine = AetherEngine.create(
+				Arrays.asList(new RepositoryConfiguration("remote", this.remote.toURI(),
+						true)),
+				new DependencyResolutionContext());
+		engine.setMetadataTtl(ttl);
+		return engine;
+	}
+
+	private void deploy(int build) throws Exception {
+		File directory = new File(this.remote, PATH);
+		directory.mkdirs();
+		String version = "1.0.0-20170101.120000-" + build;
+		FileCopyUtils.copy(("app" + build).getBytes(),
+				new File(directory, "app-" + version + ".jar"));
+		FileCopyUtils.copy(("<metadata><groupId>com.example</groupId>"
+				+ "<artifactId>app</artifactId><version>1.0.0-SNAPSHOT</version>"
+				+ "<versioning><snapshot><timestamp>20170101.120000</timestamp>"
+				+ "<buildNumber>" + build + "</buildNumber></snapshot>"
+				+ "<lastUpdated>2017010112000" + build + "</lastUpdated>"
+				+ "<snapshotVersions><snapshotVersion><extension>jar</extension>"
+				+ "<value>" + version + "</value>"
+				+ "<updated>2017010112000" + build + "</updated>"
+				+ "</snapshotVersion></snapshotVersions></versioning></metadata>")
+						.getBytes(),
+				new File(directory, "maven-metadata.xml"));
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Test;
+
+import org.springframework.boot.loader.archive.Archive;
+import org.springframework.boot.loader.archive.ExplodedArchive;
+import org.springframework.boot.loader.archive.JarFileArchive;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ArchiveIndexTests {
+
+	private static final String APP = "src/test/resources/app-with-web-in-lib-properties.jar";
+
+	@Test
+	public void pomAndPropertiesInJar() throws Exception {
+		ArchiveIndex index = ArchiveIndex.get(new JarFileArchive(new File(APP)));
+		assertThat(index.getPom("app"))
+				.isEqualTo("META-INF/maven/com.example/app/pom.xml");
+		assertThat(index.getPom("renamed"))
+				.isEqualTo("META-INF/maven/com.example/app/pom.xml");
+		assertThat(index.contains("META-INF/thin.properties")).isTrue();
+		assertThat(index.contains("application.properties")).isTrue();
+		assertThat(index.contains("META-INF/maven/dependencies.properties")).isFalse();
+		assertThat(index.contains("thin.properties")).isFalse();
+	}
+
+	@Test
+	public void pomInDirectory() throws Exception {
+		ArchiveIndex index = ArchiveIndex.get(
+				new ExplodedArchive(new File("src/test/resources/apps/placeholders")));
+		assertThat(index.getPom("placeholders")).isEqualTo("pom.xml");
+	}
+
+	@Test
+	public void sameIndexForSameArchive() throws Exception {
+		Archive archive = new JarFileArchive(new File(APP));
+		assertThat(ArchiveIndex.get(archive)).isSameAs(ArchiveIndex.get(archive));
+	}
+
+	@Test
+	public void mainClass() throws Exception {
+		File dir = new File("target/index");
+		FileSystemUtils.deleteRecursively(dir);
+		dir.mkdirs();
+		File file = new File(dir, "app.jar");
+		try (JarFile source = new JarFile(APP);
+				JarOutputStream output = new JarOutputStream(
+						new FileOutputStream(file))) {
+			for (String name : new String[] { "com/example/LauncherApplication.class",
+					"org/springframework/boot/loader/wrapper/ThinJarWrapper$Library.class" }) {
+				output.putNextEntry(new JarEntry(name));
+				try (InputStream input = source.getInputStream(source.getEntry(name))) {
+					StreamUtils.copy(input, output);
+				}
+				output.closeEntry();
+			}
+		}
+		assertThat(ArchiveIndex.get(new JarFileArchive(file)).getMainClass())
+				.isEqualTo("com.example.LauncherApplication");
+	}
+
+	@Test
+	public void moreThanOneMainClass() throws Exception {
+		try {
+			ArchiveIndex.get(new JarFileArchive(new File(APP))).getMainClass();
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage()).contains("com.example.LauncherApplication")
+					.contains("org.springframework.boot.loader.wrapper.ThinJarWrapper");
+		}
+	}
+
+}
@@ -16,6 +16,8 @@ package org.springframework.boot.loader.thin;
  */
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.List;
 
@@ -28,6 +30,7 @@ import org.springframework.boot.loader.archive.ExplodedArchive;
 import org.springframework.boot.loader.archive.JarFileArchive;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * @author Dave Syer
@@ -84,6 +87,19 @@ public class ArchiveUtilsTests {
 				.areAtLeastOne(UrlContains.value("maven-aether-provider-3.2.1"));
 	}
 
+	@Test
+	public void mavenArchiveOffline() throws Exception {
+		try {
+			ArchiveUtils.getArchive("maven://com.example:not-there:1.0.0", true);
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			// No remote repository was asked
+			assertThat(e.getCause().getMessage()).isEqualTo(
+					"Could not find artifact com.example:not-there:jar:1.0.0");
+		}
+	}
+
 	@Test
 	public void dependenciesWithMavenArchiveBootInf() throws Exception {
 		Archive child = ArchiveUtils.getArchive(
@@ -123,6 +139,40 @@ public class ArchiveUtilsTests {
 		assertThat(result).doNotHave(UrlContains.value("spring-boot/"));
 	}
 
+	@Test
+	public void dependenciesWithExclusions() throws Exception {
+		Archive child = new ExplodedArchive(
+				new File("src/test/resources/apps/exclusions"));
+		List<Archive> result = utils.extract(child, "thin");
+		assertThat(result).areAtLeastOne(UrlContains.value("spring-jdbc"));
+		assertThat(result).doNotHave(UrlContains.value("tomcat-embed-core"));
+		assertThat(result).doNotHave(UrlContains.value("tomcat-jdbc"));
+	}
+
+	@Test
+	public void offline() throws Exception {
+		Archive child = new ExplodedArchive(new File("src/test/resources/apps/db"));
+		utils.extract(child, "thin");
+		utils.setOffline(true);
+		List<Archive> result = utils.extract(child, "thin");
+		assertThat(result).areAtLeastOne(UrlContains.value("spring-jdbc"));
+	}
+
+	@Test
+	public void offlineReportsAllMissingArtifacts() throws Exception {
+		Archive child = new ExplodedArchive(
+				new File("src/test/resources/apps/missing"));
+		utils.setOffline(true);
+		try {
+			utils.extract(child, "thin");
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage()).contains("missing-one")
+					.contains("missing-two").doesNotContain("spring-core");
+		}
+	}
+
 	@Test
 	public void propertiesWithDatabase() throws Exception {
 		Archive parent = new JarFileArchive(
@@ -157,6 +207,61 @@ public class ArchiveUtilsTests {
 		assertThat(result).doNotHave(UrlContains.value("spring-boot"));
 	}
 
+	@Test
+	public void digestDependsOnProfiles() throws Exception {
+		Archive child = new ExplodedArchive(new File("src/test/resources/apps/eureka"));
+		String digest = utils.digest(null, child, "thin");
+		assertThat(utils.digest(null, child, "thin")).isEqualTo(digest);
+		assertThat(utils.digest(null, child, "thin", "extra")).isNotEqualTo(digest);
+	}
+
+	@Test
+	public void combineWithCache() throws Exception {
+		ClasspathCache cache = new ClasspathCache(new File("target/thin-cache"));
+		utils.setCache(cache);
+		Archive child = new ExplodedArchive(new File("src/test/resources/apps/db"));
+		List<Archive> result = utils.combine(null, child, "thin", new String[0]);
+		assertThat(cache.get(utils.digest(null, child, "thin")))
+				.hasSize(result.size() - 1);
+		assertThat(utils.combine(null, child, "thin", new String[0]))
+				.hasSameSizeAs(result);
+	}
+
+	@Test
+	public void versionRangeIsNotStable() throws Exception {
+		Archive db = new ExplodedArchive(new File("src/test/resources/apps/db"));
+		Archive range = new ExplodedArchive(new File("src/test/resources/apps/range"));
+		assertThat(utils.new ArchiveDependencies(db, "thin").isStable()).isTrue();
+		assertThat(utils.new ArchiveDependencies(range, "thin").isStable()).isFalse();
+	}
+
+	@Test
+	public void resolveFromLock() throws Exception {
+		Archive app = new ExplodedArchive(new File("src/test/resources/apps/db"));
+		List<Archive> expected = utils.extract(app, "thin");
+		File dir = new File("target/apps/locked/META-INF");
+		dir.mkdirs();
+		try (OutputStream stream = new FileOutputStream(new File(dir, "thin.lock"))) {
+			utils.lock(app, "thin").write(stream);
+		}
+		Archive locked = new ExplodedArchive(dir.getParentFile());
+		List<Archive> result = utils.combine(null, locked, "thin", new String[0]);
+		assertThat(result).hasSize(expected.size() + 1);
+		assertThat(result).areAtLeastOne(UrlContains.value("spring-jdbc"));
+	}
+
+	@Test
+	public void reportWithCache() throws Exception {
+		LaunchReport report = new LaunchReport();
+		utils.setReport(report);
+		utils.setCache(new ClasspathCache(new File("target/thin-cache")));
+		Archive child = new ExplodedArchive(new File("src/test/resources/apps/db"));
+		utils.combine(null, child, "thin", new String[0]);
+		utils.combine(null, child, "thin", new String[0]);
+		assertThat(report.toString()).contains("\"resolve\": {\"count\": 2")
+				.contains("\"classpath.cache.hits\"");
+	}
+
 	private static final class UrlContains extends Condition<Archive> {
 		private String string;
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ArtifactDownloaderTests {
+
+	private DefaultRepositorySystemSession session = MavenRepositorySystemUtils
+			.newSession();
+
+	private AtomicInteger running = new AtomicInteger();
+
+	private AtomicInteger maximum = new AtomicInteger();
+
+	@Test
+	public void resultsInRequestOrder() throws Exception {
+		ArtifactDownloader downloader = new ArtifactDownloader(repositorySystem(),
+				this.session);
+		List<ArtifactRequest> requests = requests(8);
+		List<ArtifactResult> results = downloader.resolve(requests);
+		assertThat(results).hasSize(8);
+		for (int i = 0; i < 8; i++) {
+			assertThat(results.get(i).getRequest()).isSameAs(requests.get(i));
+		}
+	}
+
+	@Test
+	public void globalBudget() throws Exception {
+		ArtifactDownloader downloader = new ArtifactDownloader(repositorySystem(),
+				this.session);
+		downloader.setThreads(3);
+		downloader.resolve(requests(12));
+		assertThat(this.maximum.get()).isGreaterThan(1).isLessThanOrEqualTo(3);
+	}
+
+	@Test
+	public void repositoryBudgetNotReleasedByInterruptedTransfer() throws Exception {
+		ArtifactDownloader downloader = new ArtifactDownloader(repositorySystem(),
+				this.session);
+		downloader.setRepositoryThreads(1);
+		TransferListener listener = this.session.getTransferListener();
+		TransferEvent first = event(TransferEvent.EventType.INITIATED);
+		listener.transferInitiated(first);
+		assertThat(downloader.getRepositoryBudget(first).availablePermits()).isEqualTo(0);
+		TransferEvent second = event(TransferEvent.EventType.INITIATED);
+		Thread.currentThread().interrupt();
+		try {
+			listener.transferInitiated(second);
+			fail("Expected TransferCancelledException");
+		}
+		catch (TransferCancelledException e) {
+			// expected
+		}
+		finally {
+			Thread.interrupted();
+		}
+		listener.transferFailed(second);
+		assertThat(downloader.getRepositoryBudget(first).availablePermits()).isEqualTo(0);
+		listener.transferSucceeded(first);
+		assertThat(downloader.getRepositoryBudget(first).availablePermits()).isEqualTo(1);
+	}
+
+	private TransferEvent event(TransferEvent.EventType type) {
+		return new TransferEvent.Builder(this.session,
+				new TransferResource("http://repo.example.com", "foo.jar", null, null))
+						.setType(type).build();
+	}
+
+	private List<ArtifactRequest> requests(int count) {
+		List<ArtifactRequest> requests = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			requests.add(new ArtifactRequest(
+					new DefaultArtifact("com.example:lib" + i + ":1.0"), null, null));
+		}
+		return requests;
+	}
+
+	private RepositorySystem repositorySystem() {
+		return (RepositorySystem) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { RepositorySystem.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args)
+							throws Throwable {
+						if (!method.getName().equals("resolveArtifact")) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						ArtifactRequest request = (ArtifactRequest) args[1];
+						int current = ArtifactDownloaderTests.this.running
+								.incrementAndGet();
+						while (true) {
+							int max = ArtifactDownloaderTests.this.maximum.get();
+							if (current <= max || ArtifactDownloaderTests.this.maximum
+									.compareAndSet(max, current)) {
+								break;
+							}
+						}
+						try {
+							// Later requests finish first
+							String name = request.getArtifact().getArtifactId();
+							Thread.sleep(50 - 4 * Integer.valueOf(name.substring(3)));
+						}
+						finally {
+							ArtifactDownloaderTests.this.running.decrementAndGet();
+						}
+						ArtifactResult result = new ArtifactResult(request);
+						result.setArtifact(request.getArtifact());
+						return result;
+					}
+				});
+	}
+
+}
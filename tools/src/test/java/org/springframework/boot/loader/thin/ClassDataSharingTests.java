@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ClassDataSharingTests {
+
+	private File root = new File("target/cds");
+
+	private File jar = ArchiveUtils
+			.getArchiveRoot(ArchiveUtils.getArchive(StringUtils.class));
+
+	@Test
+	public void directoryNotSupported() throws Exception {
+		ClassDataSharing cds = new ClassDataSharing(root,
+				Arrays.asList(jar, new File("target/classes")));
+		assertThat(cds.isSupported()).isFalse();
+	}
+
+	@Test
+	public void keyDependsOnClasspath() throws Exception {
+		ClassDataSharing cds = new ClassDataSharing(root, Arrays.asList(jar));
+		assertThat(cds.getArchive()).isEqualTo(
+				new ClassDataSharing(root, Arrays.asList(jar)).getArchive());
+		assertThat(cds.getArchive()).isNotEqualTo(new ClassDataSharing(root,
+				Arrays.asList(jar, new File("pom.xml"))).getArchive());
+	}
+
+	@Test
+	public void commandForFirstLaunch() throws Exception {
+		Assume.assumeTrue(ClassDataSharing.javaVersion() >= 13);
+		FileSystemUtils.deleteRecursively(root);
+		ClassDataSharing cds = new ClassDataSharing(root, Arrays.asList(jar));
+		assertThat(cds.isSupported()).isTrue();
+		List<String> command = cds.command("com.example.Main", new String[] { "foo" });
+		assertThat(command).contains("com.example.Main", "foo", "-cp",
+				jar.getAbsolutePath());
+		assertThat(command.toString()).contains(
+				ClassDataSharing.javaVersion() >= 19 ? "-XX:+AutoCreateSharedArchive"
+						: "-XX:ArchiveClassesAtExit=");
+	}
+
+	@Test
+	public void firstLaunchCreatesArchive() throws Exception {
+		Assume.assumeTrue(ClassDataSharing.javaVersion() >= 13);
+		FileSystemUtils.deleteRecursively(root);
+		ClassDataSharing cds = new ClassDataSharing(root, Arrays.asList(app()));
+		Process process = new ProcessBuilder(
+				cds.command(Main.class.getName(), new String[0])).inheritIO().start();
+		assertThat(process.waitFor()).isEqualTo(0);
+		cds.finish();
+		assertThat(cds.getArchive()).exists();
+		assertThat(new File(root, "thin/cds").list()).containsExactly(
+				cds.getArchive().getName());
+	}
+
+	@Test
+	public void agentsAndDebuggersNotInherited() throws Exception {
+		assertThat(ClassDataSharing.isInherited("-Xmx64m")).isTrue();
+		assertThat(ClassDataSharing.isInherited("-Dfoo=bar")).isTrue();
+		assertThat(ClassDataSharing.isInherited(
+				"-agentlib:jdwp=transport=dt_socket,server=y,address=5005")).isFalse();
+		assertThat(ClassDataSharing.isInherited("-javaagent:agent.jar")).isFalse();
+		assertThat(ClassDataSharing
+				.isInherited("-Dcom.sun.management.jmxremote.port=9999")).isFalse();
+		assertThat(ClassDataSharing.isInherited("-XX:SharedArchiveFile=app.jsa"))
+				.isFalse();
+	}
+
+	private File app() throws Exception {
+		File jar = new File(root, "app.jar");
+		jar.getParentFile().mkdirs();
+		String name = Main.class.getName().replace(".", "/") + ".class";
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+				InputStream input = getClass().getClassLoader()
+						.getResourceAsStream(name)) {
+			output.putNextEntry(new ZipEntry(name));
+			StreamUtils.copy(input, output);
+			output.closeEntry();
+		}
+		return jar;
+	}
+
+	public static class Main {
+
+		public static void main(String[] args) {
+			System.out.println("Hello World");
+		}
+
+	}
+
+}
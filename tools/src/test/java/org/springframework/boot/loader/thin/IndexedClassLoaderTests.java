@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.net.URL;
+
+import org.junit.Test;
+
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class IndexedClassLoaderTests {
+
+	private URL jar = StringUtils.class.getProtectionDomain().getCodeSource()
+			.getLocation();
+
+	@Test
+	public void findsClassesAndResources() throws Exception {
+		try (IndexedClassLoader loader = new IndexedClassLoader(new URL[] { jar },
+				null)) {
+			assertThat(loader.isIndexed()).isTrue();
+			assertThat(loader.loadClass(StringUtils.class.getName()).getClassLoader())
+					.isSameAs(loader);
+			assertThat(loader.getResource("org/springframework/util/StringUtils.class"))
+					.isNotNull();
+			assertThat(loader.getResources("META-INF/MANIFEST.MF").hasMoreElements())
+					.isTrue();
+		}
+	}
+
+	@Test
+	public void missesWithoutSearching() throws Exception {
+		try (IndexedClassLoader loader = new IndexedClassLoader(new URL[] { jar },
+				null)) {
+			assertThat(loader.getResource("com/example/Missing.class")).isNull();
+			assertThat(loader.getResources("com/example/missing.properties")
+					.hasMoreElements()).isFalse();
+			try {
+				loader.loadClass("com.example.Missing");
+				fail("Expected ClassNotFoundException");
+			}
+			catch (ClassNotFoundException e) {
+				assertThat(e.getMessage()).contains("com.example.Missing");
+			}
+		}
+	}
+
+	@Test
+	public void directory() throws Exception {
+		URL classes = new File("target/test-classes").toURI().toURL();
+		try (IndexedClassLoader loader = new IndexedClassLoader(new URL[] { classes },
+				null)) {
+			assertThat(loader.isIndexed()).isTrue();
+			assertThat(loader.getResource("apps/db/META-INF/thin.properties"))
+					.isNotNull();
+			assertThat(loader.getResource("apps/missing.properties")).isNull();
+			assertThat(loader.getResource("apps")).isNotNull();
+			assertThat(loader.getResource("apps/db/")).isNotNull();
+		}
+	}
+
+	@Test
+	public void directoryInJar() throws Exception {
+		try (IndexedClassLoader loader = new IndexedClassLoader(new URL[] { jar },
+				null)) {
+			assertThat(loader.getResource("org/springframework/util")).isNotNull();
+			assertThat(loader.getResource("org/springframework")).isNotNull();
+			assertThat(loader.getResources("org").hasMoreElements()).isTrue();
+			assertThat(loader.getResource("org/example")).isNull();
+		}
+	}
+
+	@Test
+	public void cache() throws Exception {
+		File cache = new File("target/thin-index");
+		FileSystemUtils.deleteRecursively(cache);
+		try (IndexedClassLoader loader = new IndexedClassLoader(new URL[] { jar },
+				null, cache)) {
+			assertThat(loader.isIndexed()).isTrue();
+		}
+		assertThat(cache.listFiles()).hasSize(1);
+		try (IndexedClassLoader loader = new IndexedClassLoader(new URL[] { jar },
+				null, cache)) {
+			assertThat(loader.getResource("org/springframework/util/StringUtils.class"))
+					.isNotNull();
+			assertThat(loader.getResource("com/example/Missing.class")).isNull();
+		}
+	}
+
+	@Test
+	public void cacheIsPruned() throws Exception {
+		File cache = new File("target/thin-index");
+		FileSystemUtils.deleteRecursively(cache);
+		cache.mkdirs();
+		for (int i = 0; i < 60; i++) {
+			File old = new File(cache, "old" + i);
+			old.createNewFile();
+			old.setLastModified(System.currentTimeMillis() - 60000 - i);
+		}
+		try (IndexedClassLoader loader = new IndexedClassLoader(new URL[] { jar },
+				null, cache)) {
+			assertThat(loader.isIndexed()).isTrue();
+		}
+		assertThat(cache.listFiles()).hasSize(50);
+		assertThat(new File(cache, "old0")).exists();
+		assertThat(new File(cache, "old59")).doesNotExist();
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class LaunchReportTests {
+
+	private LaunchReport report = new LaunchReport();
+
+	@Test
+	public void nestedPhase() {
+		LaunchReport.Timer outer = this.report.start(LaunchReport.BOM);
+		this.report.start(LaunchReport.DOWNLOAD).stop();
+		outer.stop();
+		this.report.start(LaunchReport.DOWNLOAD).stop();
+		String json = this.report.toString();
+		assertThat(json).contains("\"bom\": {\"count\": 1");
+		assertThat(json.substring(json.indexOf("\"bom\"")))
+				.contains("\"phases\": {\n      \"download\": {\"count\": 1");
+		assertThat(json).contains("\n    \"download\": {\"count\": 1");
+	}
+
+	@Test
+	public void samePhaseNotCountedTwice() {
+		LaunchReport.Timer outer = this.report.start(LaunchReport.BOM);
+		this.report.start(LaunchReport.BOM).stop();
+		outer.stop();
+		this.report.start(LaunchReport.BOM).stop();
+		assertThat(this.report.toString()).contains("\"bom\": {\"count\": 2")
+				.doesNotContain("\"phases\": {\n      \"bom\"");
+	}
+
+	@Test
+	public void uptime() {
+		this.report.record(LaunchReport.UPTIME, 1234);
+		assertThat(this.report.toString())
+				.contains("\"uptime\": {\"count\": 1, \"wallMillis\": 1234");
+	}
+
+}
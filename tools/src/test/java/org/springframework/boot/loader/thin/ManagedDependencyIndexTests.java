@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+import org.junit.Test;
+
+import org.springframework.util.FileCopyUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ManagedDependencyIndexTests {
+
+	private Artifact bom = new DefaultArtifact("com.example:bom:pom:1.0.0");
+
+	@Test
+	public void roundTrip() throws Exception {
+		File pom = pom("<project/>");
+		Dependency dependency = new Dependency(
+				new DefaultArtifact("com.example:foo:jar:tests:1.0.0"), "runtime", true,
+				Arrays.asList(new Exclusion("com.example", "bar", "*", "*")));
+		ManagedDependencyIndex.write(bom, pom, Arrays.asList(dependency));
+		List<Dependency> result = ManagedDependencyIndex.read(bom, pom);
+		assertThat(result).hasSize(1);
+		assertThat(result.get(0).getArtifact().toString())
+				.isEqualTo("com.example:foo:jar:tests:1.0.0");
+		assertThat(result.get(0).getScope()).isEqualTo("runtime");
+		assertThat(result.get(0).getOptional()).isTrue();
+		assertThat(result.get(0).getExclusions()).hasSize(1);
+	}
+
+	@Test
+	public void changedPom() throws Exception {
+		File pom = pom("<project/>");
+		ManagedDependencyIndex.write(bom, pom,
+				Arrays.asList(new Dependency(
+						new DefaultArtifact("com.example:foo:1.0.0"), "compile")));
+		FileCopyUtils.copy("<project></project>".getBytes(), pom);
+		assertThat(ManagedDependencyIndex.read(bom, pom)).isNull();
+	}
+
+	private File pom(String content) throws Exception {
+		File pom = new File("target/index/bom-1.0.0.pom");
+		pom.getParentFile().mkdirs();
+		FileCopyUtils.copy(content.getBytes(), pom);
+		return pom;
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.util.List;
+
+import org.eclipse.aether.graph.Dependency;
+import org.junit.Test;
+
+import org.springframework.boot.cli.compiler.RepositoryConfigurationFactory;
+import org.springframework.boot.cli.compiler.grape.DependencyResolutionContext;
+import org.springframework.boot.loader.thin.AetherEngine.ProgressType;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class PomLoaderTests {
+
+	private PomLoader.ModelCache cache = new PomLoader.ModelCache();
+
+	@Test
+	public void placeholdersInSharedModel() throws Exception {
+		Resource pom = new FileSystemResource(
+				"src/test/resources/apps/placeholders/pom.xml");
+		PomLoader first = new PomLoader(engine(), this.cache);
+		PomLoader second = new PomLoader(engine(), this.cache);
+		List<Dependency> dependencies = first.getDependencies(pom);
+		assertThat(dependencies).hasSize(1);
+		assertThat(dependencies.get(0).getArtifact().getVersion())
+				.isEqualTo("1.3.8.RELEASE");
+		assertThat(second.getDependencies(pom).toString())
+				.isEqualTo(dependencies.toString());
+		assertThat(second.getParent(pom)).isNull();
+	}
+
+	@Test
+	public void propertiesFromParentChain() throws Exception {
+		Resource pom = new FileSystemResource(
+				"src/test/resources/apps/parent-properties/pom.xml");
+		PomLoader first = new PomLoader(engine(), this.cache);
+		PomLoader second = new PomLoader(engine(), this.cache);
+		assertThat(first.getDependencies(pom).get(0).getArtifact().getVersion())
+				.isEqualTo("4.1.3.RELEASE");
+		assertThat(second.getDependencies(pom).get(0).getArtifact().getVersion())
+				.isEqualTo("4.1.3.RELEASE");
+		assertThat(second.getParent(pom)).isEqualTo(
+				"org.springframework.boot:spring-boot-starter-parent:pom::1.4.1.RELEASE");
+	}
+
+	private AetherEngine engine() {
+		return AetherEngine.create(
+				RepositoryConfigurationFactory.createDefaultRepositoryConfiguration(),
+				new DependencyResolutionContext(), ProgressType.NONE);
+	}
+
+}
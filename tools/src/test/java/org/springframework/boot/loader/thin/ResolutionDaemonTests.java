@@ -0,0 +1,232 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.boot.loader.archive.ExplodedArchive;
+import org.springframework.boot.loader.archive.JarFileArchive;
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ResolutionDaemonTests {
+
+	private File root = new File("target/daemon");
+
+	private ResolutionDaemon daemon;
+
+	private Thread thread;
+
+	@Before
+	public void init() {
+		Assume.assumeTrue(DaemonSockets.get().isSupported());
+		FileSystemUtils.deleteRecursively(this.root);
+	}
+
+	@After
+	public void close() throws Exception {
+		if (this.daemon != null) {
+			this.daemon.stop();
+			// It deletes the socket on the way out, so the next test has to wait
+			this.thread.join(10000L);
+		}
+	}
+
+	@Test
+	public void noDaemon() throws Exception {
+		assertThat(ResolutionDaemon.classpath(this.root, request("db"))).isNull();
+	}
+
+	@Test
+	public void classpathFromDaemon() throws Exception {
+		File app = new File("src/test/resources/apps/db");
+		List<File> expected = new ArchiveUtils().classpath(null,
+				new ExplodedArchive(app), "thin", new String[0]);
+		start();
+		ResolutionDaemon.Request request = request("db");
+		assertThat(ResolutionDaemon.classpath(this.root, request))
+				.isEqualTo(expected);
+		// Again, with the models warm
+		assertThat(ResolutionDaemon.classpath(this.root, request))
+				.isEqualTo(expected);
+	}
+
+	@Test
+	public void failureInDaemon() throws Exception {
+		start();
+		ResolutionDaemon.Request request = request("missing");
+		request.setOffline(true);
+		try {
+			ResolutionDaemon.classpath(this.root, request);
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage()).contains("missing-one");
+		}
+	}
+
+	@Test
+	public void slowDaemon() throws Exception {
+		File socket = ResolutionDaemon.getSocket(this.root);
+		socket.getParentFile().mkdirs();
+		try (DaemonSockets.Server server = DaemonSockets.get().bind(socket)) {
+			// Accepts the connection but never answers
+			assertThat(ResolutionDaemon.classpath(this.root, request("db"), 200L))
+					.isNull();
+		}
+	}
+
+	@Test
+	public void concurrentRequests() throws Exception {
+		start();
+		final ResolutionDaemon.Request first = request("db");
+		final ResolutionDaemon.Request second = request("exclusions");
+		final List<List<File>> results = new ArrayList<>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					List<File> files = ResolutionDaemon.classpath(
+							ResolutionDaemonTests.this.root, first);
+					synchronized (results) {
+						results.add(files);
+					}
+				}
+				catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		thread.start();
+		List<File> files = ResolutionDaemon.classpath(this.root, second);
+		thread.join();
+		assertThat(files).isNotEmpty();
+		assertThat(results).hasSize(1);
+		assertThat(results.get(0)).isNotEmpty();
+	}
+
+	@Test
+	public void rebuiltJar() throws Exception {
+		start();
+		File jar = new File(this.root, "app.jar");
+		ResolutionDaemon.Request request = new ResolutionDaemon.Request();
+		request.setArchive(jar.getAbsolutePath());
+		request.setCache(false);
+		jar(jar, "spring-boot-starter-jdbc");
+		List<File> files = ResolutionDaemon.classpath(this.root, request);
+		assertThat(files).isEqualTo(classpath(null, jar));
+		assertThat(files.toString()).contains("spring-jdbc");
+		jar(jar, "spring-boot-starter-actuator");
+		files = ResolutionDaemon.classpath(this.root, request);
+		assertThat(files).isEqualTo(classpath(null, jar));
+		assertThat(files.toString()).doesNotContain("spring-jdbc");
+	}
+
+	@Test
+	public void rebuiltParent() throws Exception {
+		start();
+		File jar = new File(this.root, "parent.jar");
+		File app = new File("src/test/resources/apps/exclusions");
+		ResolutionDaemon.Request request = request("exclusions");
+		request.setParent(jar.getAbsolutePath());
+		jar(jar, "spring-boot-starter-actuator");
+		List<File> files = ResolutionDaemon.classpath(this.root, request);
+		assertThat(files).isEqualTo(classpath(jar, app));
+		jar(jar, "spring-boot-starter-jdbc");
+		assertThat(ResolutionDaemon.classpath(this.root, request))
+				.isEqualTo(classpath(jar, app)).isNotEqualTo(files);
+	}
+
+	private List<File> classpath(File parent, File app) throws Exception {
+		ArchiveUtils utils = new ArchiveUtils();
+		JarFileArchive archive = parent == null ? null : new JarFileArchive(parent);
+		return utils.classpath(archive,
+				app.isDirectory() ? new ExplodedArchive(app) : new JarFileArchive(app),
+				"thin", new String[0]);
+	}
+
+	/**
+	 * Write (or rewrite) a jar with a pom that has a single dependency, with a
+	 * different time stamp each time.
+	 */
+	private void jar(File jar, String dependency) throws Exception {
+		long modified = jar.exists() ? jar.lastModified() + 2000 : 0;
+		jar.getParentFile().mkdirs();
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(jar))) {
+			output.putNextEntry(
+					new JarEntry("META-INF/maven/com.example/app/pom.xml"));
+			output.write(("<project><modelVersion>4.0.0</modelVersion>"
+					+ "<groupId>com.example</groupId><artifactId>app</artifactId>"
+					+ "<version>0.0.1</version><dependencies><dependency>"
+					+ "<groupId>org.springframework.boot</groupId><artifactId>"
+					+ dependency + "</artifactId><version>1.3.8.RELEASE</version>"
+					+ "</dependency></dependencies></project>").getBytes("UTF-8"));
+			output.closeEntry();
+		}
+		if (modified > 0) {
+			jar.setLastModified(modified);
+		}
+	}
+
+	private ResolutionDaemon.Request request(String app) {
+		ResolutionDaemon.Request request = new ResolutionDaemon.Request();
+		request.setArchive(
+				new File("src/test/resources/apps/" + app).getAbsolutePath());
+		request.setCache(false);
+		return request;
+	}
+
+	private void start() throws Exception {
+		this.daemon = new ResolutionDaemon(this.root.getAbsoluteFile());
+		this.thread = new Thread("daemon") {
+			@Override
+			public void run() {
+				try {
+					ResolutionDaemonTests.this.daemon.run();
+				}
+				catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		this.thread.setDaemon(true);
+		this.thread.start();
+		File socket = ResolutionDaemon.getSocket(this.root.getAbsoluteFile());
+		for (int i = 0; i < 100 && !socket.exists(); i++) {
+			Thread.sleep(50);
+		}
+		assertThat(socket).exists();
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.boot.loader.archive.Archive;
+import org.springframework.boot.loader.archive.ExplodedArchive;
+import org.springframework.boot.loader.thin.container.ContainerBootApplication;
+import org.springframework.boot.loader.thin.container.ContainerSampleApplication;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ThinContainerTests {
+
+	private ThinContainer container;
+
+	@Before
+	public void init() {
+		FileSystemUtils.deleteRecursively(new File("target/container"));
+		this.container = new ThinContainer(new ArchiveUtils(),
+				new ExplodedArchive(new File("src/test/resources/apps/db")), "thin");
+	}
+
+	@After
+	public void close() {
+		this.container.close();
+	}
+
+	@Test
+	public void sharedLibraries() throws Exception {
+		this.container.start("one", app("one"), "one");
+		this.container.start("two", app("two"), "two");
+		this.container.awaitStarted("one");
+		this.container.awaitStarted("two");
+		String library = System.getProperty("container.one.library");
+		assertThat(library).isEqualTo(System.getProperty("container.two.library"));
+		assertThat(library).isEqualTo(String.valueOf(
+				System.identityHashCode(this.container.getSharedClassLoader())));
+		assertThat(library).isNotEqualTo(String
+				.valueOf(System.identityHashCode(StringUtils.class.getClassLoader())));
+		assertThat(System.getProperty("container.one.app"))
+				.isNotEqualTo(System.getProperty("container.two.app"));
+	}
+
+	@Test
+	public void stopOneApp() throws Exception {
+		this.container.start("waiting", app("waiting"), "waiting", "wait");
+		this.container.start("other", app("other"), "other", "wait");
+		assertThat(this.container.getApps()).containsExactly("waiting", "other");
+		this.container.stop("waiting");
+		for (int i = 0; i < 100
+				&& System.getProperty("container.waiting.stopped") == null; i++) {
+			Thread.sleep(50);
+		}
+		assertThat(System.getProperty("container.waiting.stopped")).isEqualTo("true");
+		assertThat(System.getProperty("container.other.stopped")).isNull();
+		assertThat(this.container.getApps()).containsExactly("other");
+	}
+
+	@Test
+	public void stopBootApp() throws Exception {
+		this.container.start("boot", app("boot", ContainerBootApplication.class),
+				"--container.id=boot", "--spring.main.banner-mode=off");
+		this.container.awaitStarted("boot");
+		ObjectName name = new ObjectName(
+				"org.springframework.boot:type=Admin,name=boot");
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				.isTrue();
+		assertThat(System.getProperty("container.boot.closed")).isNull();
+		this.container.stop("boot");
+		assertThat(System.getProperty("container.boot.closed")).isEqualTo("true");
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				.isFalse();
+	}
+
+	@Test
+	public void stopBootAppWhileStarting() throws Exception {
+		this.container.start("starting",
+				app("starting", ContainerBootApplication.class),
+				"--container.id=starting", "--container.delay=500",
+				"--spring.main.banner-mode=off");
+		this.container.stop("starting");
+		assertThat(System.getProperty("container.starting.closed")).isEqualTo("true");
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				new ObjectName("org.springframework.boot:type=Admin,name=starting")))
+						.isFalse();
+	}
+
+	private Archive app(String id) throws Exception {
+		return app(id, ContainerSampleApplication.class);
+	}
+
+	private Archive app(String id, Class<?> type) throws Exception {
+		File directory = new File("target/container/" + id);
+		String path = type.getName().replace(".", "/") + ".class";
+		File target = new File(directory, path);
+		target.getParentFile().mkdirs();
+		FileCopyUtils.copy(new File("target/test-classes/" + path), target);
+		File properties = new File(directory, "META-INF/thin.properties");
+		properties.getParentFile().mkdirs();
+		FileCopyUtils.copy(new byte[0], properties);
+		return new ExplodedArchive(directory);
+	}
+
+}
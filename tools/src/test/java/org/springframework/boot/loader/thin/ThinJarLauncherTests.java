@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileReader;
+
+import org.junit.Test;
+
+import org.springframework.util.FileCopyUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ThinJarLauncherTests {
+
+	@Test
+	public void classpathToFile() throws Exception {
+		File file = new File("target/classpath/db.txt");
+		file.delete();
+		ThinJarLauncher.main(new String[] { "--thin.archive=src/test/resources/apps/db",
+				"--thin.classpath=true", "--thin.classpath.file=" + file });
+		String output = FileCopyUtils.copyToString(new FileReader(file));
+		assertThat(output).contains("spring-jdbc").doesNotContain("apps/db")
+				.endsWith(".jar\n");
+	}
+
+	@Test
+	public void classpathArgFile() throws Exception {
+		File file = new File("target/classpath/db.args");
+		file.delete();
+		ThinJarLauncher.main(new String[] { "--thin.archive=src/test/resources/apps/db",
+				"--thin.classpath=true", "--thin.classpath.format=argfile",
+				"--thin.classpath.file=" + file });
+		String output = FileCopyUtils.copyToString(new FileReader(file));
+		assertThat(output).startsWith("-cp\n\"").contains("spring-jdbc")
+				.contains(new File("src/test/resources/apps/db").getCanonicalPath())
+				.endsWith("\"\n");
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ThinLocalRepositoryManagerTests {
+
+	private File root = new File("target/indexed");
+
+	private File repository = new File(root, "repository");
+
+	private DefaultRepositorySystemSession session = MavenRepositorySystemUtils
+			.newSession();
+
+	private Artifact artifact = new DefaultArtifact("com.example:app:1.0.0");
+
+	@Before
+	public void init() {
+		FileSystemUtils.deleteRecursively(this.root);
+	}
+
+	@Test
+	public void deletedArtifactIsNotFound() throws Exception {
+		ThinLocalRepositoryManager manager = new ThinLocalRepositoryManager(
+				this.session, this.repository);
+		assertThat(find(manager)).isFalse();
+		File file = new File(this.repository,
+				manager.getPathForLocalArtifact(this.artifact));
+		file.getParentFile().mkdirs();
+		FileCopyUtils.copy("app".getBytes(), file);
+		assertThat(find(manager)).isTrue();
+		file.delete();
+		assertThat(find(manager)).isFalse();
+	}
+
+	@Test
+	public void artifactFromAnyRepository() throws Exception {
+		ThinLocalRepositoryManager manager = new ThinLocalRepositoryManager(
+				this.session, this.repository);
+		RemoteRepository mirror = new RemoteRepository.Builder("mirror", "default",
+				"file:///tmp/mirror").build();
+		RemoteRepository central = new RemoteRepository.Builder("central", "default",
+				"file:///tmp/central").build();
+		File file = new File(this.repository,
+				manager.getPathForRemoteArtifact(this.artifact, mirror, ""));
+		file.getParentFile().mkdirs();
+		FileCopyUtils.copy("app".getBytes(), file);
+		manager.add(this.session,
+				new LocalArtifactRegistration(this.artifact, mirror, null));
+		assertThat(manager.find(this.session,
+				new LocalArtifactRequest(this.artifact,
+						Collections.singletonList(central), null))
+				.isAvailable()).isTrue();
+		assertThat(new File(file.getParentFile(), "_remote.repositories"))
+				.doesNotExist();
+	}
+
+	@Test
+	public void timestampedSnapshotFromRemote() throws Exception {
+		ThinLocalRepositoryManager manager = new ThinLocalRepositoryManager(
+				this.session, this.repository);
+		Artifact snapshot = new DefaultArtifact(
+				"com.example:app:1.0.0-20170101.120000-1");
+		RemoteRepository remote = new RemoteRepository.Builder("mirror", "default",
+				"file:///tmp/mirror").build();
+		File file = new File(this.repository,
+				manager.getPathForRemoteArtifact(snapshot, remote, ""));
+		file.getParentFile().mkdirs();
+		FileCopyUtils.copy("app".getBytes(), file);
+		manager.add(this.session, new LocalArtifactRegistration(snapshot, remote, null));
+		assertThat(find(manager, snapshot)).isTrue();
+		assertThat(find(manager, new DefaultArtifact("com.example:app:1.0.0-SNAPSHOT")))
+				.isFalse();
+	}
+
+	private boolean find(ThinLocalRepositoryManager manager) {
+		return find(manager, this.artifact);
+	}
+
+	private boolean find(ThinLocalRepositoryManager manager, Artifact artifact) {
+		return manager.find(this.session, new LocalArtifactRequest(artifact, null, null))
+				.isAvailable();
+	}
+
+}
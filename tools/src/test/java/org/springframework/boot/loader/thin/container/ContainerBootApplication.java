@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin.container;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.admin.SpringApplicationAdminMXBeanRegistrar;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.core.env.Environment;
+
+/**
+ * A Spring Boot app for the container tests, with just the application admin MBean
+ * (registered under the name that the container gives it). It reports that its context
+ * was closed in a system property. Not a <code>@Configuration</code> so that it runs
+ * without CGLIB proxies.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ContainerBootApplication
+		implements ApplicationListener<ContextClosedEvent> {
+
+	@Bean
+	public SpringApplicationAdminMXBeanRegistrar adminRegistrar(Environment environment)
+			throws Exception {
+		return new SpringApplicationAdminMXBeanRegistrar(
+				environment.getProperty("spring.application.admin.jmx-name"));
+	}
+
+	@Bean
+	public Object slowStart(Environment environment) throws Exception {
+		// Still starting for a while, so that the tests can stop it while it starts
+		Thread.sleep(environment.getProperty("container.delay", Long.class, 0L));
+		return new Object();
+	}
+
+	public static void main(String[] args) throws Exception {
+		SpringApplication application = new SpringApplication(
+				ContainerBootApplication.class);
+		application.setWebEnvironment(false);
+		application.run(args);
+	}
+
+	@Override
+	public void onApplicationEvent(ContextClosedEvent event) {
+		String id = event.getApplicationContext().getEnvironment()
+				.getProperty("container.id");
+		System.setProperty("container." + id + ".closed", "true");
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin.container;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * An app for the container tests (copied into its own directory, so it is not loaded
+ * from the test classpath). It reports which class loader it got a library from in a
+ * system property.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ContainerSampleApplication {
+
+	public static void main(String[] args) throws Exception {
+		String id = args[0];
+		System.setProperty("container." + id + ".library", String.valueOf(
+				System.identityHashCode(StringUtils.class.getClassLoader())));
+		System.setProperty("container." + id + ".app", String.valueOf(System
+				.identityHashCode(ContainerSampleApplication.class.getClassLoader())));
+		if (args.length > 1 && "wait".equals(args[1])) {
+			try {
+				Thread.sleep(60000L);
+			}
+			catch (InterruptedException e) {
+				System.setProperty("container." + id + ".stopped", "true");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class LaunchEventsTests {
+
+	@Test
+	public void flightRecorderAvailable() throws Exception {
+		assertThat(LaunchEvents.get()).isInstanceOf(FlightRecorderEvents.class);
+	}
+
+	@Test
+	public void noEventWithoutRecording() throws Exception {
+		assertThat(LaunchEvents.get().begin("test")).isNull();
+	}
+
+	@Test
+	public void phaseEvent() throws Exception {
+		File file = new File("target/launch-events.jfr");
+		List<String> phases = new ArrayList<>();
+		try (Recording recording = new Recording()) {
+			recording.enable("org.springframework.boot.thin.Phase");
+			recording.start();
+			new LaunchReport().start(LaunchReport.RESOLVE).stop();
+			recording.stop();
+			recording.dump(file.toPath());
+		}
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+			phases.add(event.getString("phase"));
+		}
+		assertThat(phases).contains(LaunchReport.RESOLVE);
+	}
+
+}
@@ -16,13 +16,24 @@
 
 package org.springframework.boot.loader.wrapper;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -62,6 +73,12 @@ public class ThinJarWrapper {
 	 */
 	public static final String THIN_LAUNCHER = "thin.launcher";
 
+	/**
+	 * The location of a Maven repository (layout) inside the app jar where the launcher
+	 * might be embedded by the build.
+	 */
+	static final String EMBEDDED_REPOSITORY = "META-INF/loader/repository";
+
 	private static final String DEFAULT_LAUNCHER_CLASS = "org.springframework.boot.loader.thin.ThinJarLauncher";
 
 	private static final String DEFAULT_LIBRARY = "org.springframework.boot.experimental:spring-boot-thin-launcher:0.0.1.BUILD-SNAPSHOT";
@@ -143,6 +160,8 @@ public class ThinJarWrapper {
 
 	static class Library {
 
+		private static final long TRANSFER_SIZE = 1024 * 1024;
+
 		private String coordinates;
 		private String groupId;
 		private String artifactId;
@@ -171,23 +190,57 @@ public class ThinJarWrapper {
 			return (value == null || value.length() <= 0) ? defaultValue : value;
 		}
 
+		/**
+		 * Download the library to the local repository, if it is not already there. The
+		 * file is written to a temporary location first and then moved into place
+		 * atomically, so it is either there and complete or not there at all. Only one
+		 * process downloads the library (they take turns to hold a lock on a file next
+		 * to it), and the others find it when it is their turn.
+		 * @param path the local repository to download to
+		 * @param defaultPath the default local repository (tried first as a source)
+		 */
 		public void download(String path, String defaultPath) {
-			if (path==null) {
+			if (path == null) {
 				path = defaultPath;
 			}
 			File target = new File(path + getPath());
-			if (!target.exists() && target.getParentFile().mkdirs()) {
-				boolean result = false;
-				if (!defaultPath.equals(path)) {
-					// Try local repo first
-					result = downloadFromUrl(getUrl(defaultPath), target);
-				}
-				if (!result) {
-					result = downloadFromUrl(repo(), target);
+			if (target.exists()) {
+				return;
+			}
+			File directory = target.getParentFile();
+			if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+				throw new IllegalStateException(
+						"Cannot create directory for launcher " + directory);
+			}
+			// File locks are held by the JVM, so threads have to take turns as well
+			synchronized (Library.class) {
+				try (RandomAccessFile file = new RandomAccessFile(
+						new File(target.getPath() + ".lock"), "rw");
+						FileLock lock = file.getChannel().lock()) {
+					if (target.exists()) {
+						// Another process downloaded it while we were waiting
+						return;
+					}
+					boolean result = false;
+					if (!defaultPath.equals(path)) {
+						// Try local repo first
+						result = downloadFromUrl(getUrl(defaultPath), target);
+					}
+					if (!result && embedded() != null) {
+						// Copied into the app jar by the build
+						result = downloadFromUrl(embedded(), target);
+					}
+					if (!result) {
+						result = downloadFromUrl(repo(), target);
+					}
+					if (!result) {
+						throw new IllegalStateException(
+								"Cannot download library for launcher " + coordinates);
+					}
 				}
-				if (!result) {
+				catch (IOException e) {
 					throw new IllegalStateException(
-							"Cannot download library for launcher " + coordinates);
+							"Cannot lock library for launcher " + coordinates, e);
 				}
 			}
 		}
@@ -200,40 +253,91 @@ public class ThinJarWrapper {
 		}
 
 		private boolean downloadFromUrl(String repo, File target) {
-			InputStream input = null;
-			OutputStream output = null;
+			File temp = null;
 			try {
-				input = new URL(repo + getPath()).openStream();
-				output = new FileOutputStream(target);
-				byte[] bytes = new byte[4096];
-				int count = input.read(bytes);
-				while (count > 0) {
-					output.write(bytes, 0, count);
-					count = input.read(bytes);
+				temp = File.createTempFile(target.getName(), ".tmp",
+						target.getParentFile());
+				MessageDigest digest = MessageDigest.getInstance("SHA-1");
+				try (ReadableByteChannel input = Channels.newChannel(
+						new DigestInputStream(new URL(repo + getPath()).openStream(),
+								digest));
+						FileChannel output = new FileOutputStream(temp).getChannel()) {
+					long position = 0;
+					long count;
+					while ((count = output.transferFrom(input, position,
+							TRANSFER_SIZE)) > 0) {
+						position += count;
+					}
+				}
+				String checksum = checksum(repo);
+				if (checksum != null && !checksum.equals(hex(digest.digest()))) {
+					// Corrupt or truncated download, so try somewhere else
+					return false;
+				}
+				try {
+					Files.move(temp.toPath(), target.toPath(),
+							StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp.toPath(), target.toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
 				}
 				return true;
 			}
 			catch (Exception e) {
 			}
 			finally {
-				if (input != null) {
-					try {
-						input.close();
-					}
-					catch (Exception e) {
-					}
-				}
-				if (output != null) {
-					try {
-						output.close();
-					}
-					catch (Exception e) {
-					}
+				if (temp != null && temp.exists()) {
+					temp.delete();
 				}
 			}
 			return false;
 		}
 
+		/**
+		 * The SHA-1 checksum published next to the library in a repository, if there is
+		 * one (there might not be in a local repository populated by a build).
+		 */
+		private String checksum(String repo) {
+			try (InputStream input = new URL(repo + getPath() + ".sha1").openStream()) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[128];
+				int count;
+				while ((count = input.read(buffer)) > 0) {
+					bytes.write(buffer, 0, count);
+				}
+				// Sometimes the file name follows the checksum
+				String checksum = new String(bytes.toByteArray(), "UTF-8").trim()
+						.split("\\s+")[0];
+				return checksum.length() == 0 ? null : checksum.toLowerCase();
+			}
+			catch (Exception e) {
+				return null;
+			}
+		}
+
+		private static String hex(byte[] bytes) {
+			StringBuilder builder = new StringBuilder();
+			for (byte value : bytes) {
+				builder.append(String.format("%02x", value));
+			}
+			return builder.toString();
+		}
+
+		/**
+		 * The repository embedded in the jar that the wrapper came from, if it has this
+		 * library in it.
+		 */
+		private String embedded() {
+			URL url = ThinJarWrapper.class.getClassLoader()
+					.getResource(EMBEDDED_REPOSITORY + getPath());
+			if (url == null) {
+				return null;
+			}
+			String value = url.toString();
+			return value.substring(0, value.length() - getPath().length());
+		}
+
 		private String repo() {
 			String repo = getProperty(THIN_REPO);
 			return repo != null ? repo : "https://repo.spring.io/libs-snapshot";
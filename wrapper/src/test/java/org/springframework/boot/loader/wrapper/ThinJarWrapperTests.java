@@ -18,16 +18,30 @@ package org.springframework.boot.loader.wrapper;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.springframework.boot.loader.wrapper.ThinJarWrapper.Library;
+
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Dave Syer
@@ -86,6 +100,84 @@ public class ThinJarWrapperTests {
 		assertThat(output, containsString("Main Running"));
 	}
 
+	@Test
+	public void testDownloadWithChecksum() throws Exception {
+		File repo = repository("checksum", sha1(jar()));
+		System.setProperty("thin.repo", repo.toURI().toURL().toString());
+		String local = new File("target/checksum/local").getAbsolutePath();
+		delete(new File(local));
+		new Library("com.example:main:0.0.1-SNAPSHOT").download(local, local);
+		File target = new File(local + "/com/example/main/0.0.1-SNAPSHOT",
+				"main-0.0.1-SNAPSHOT.jar");
+		assertTrue(target.exists());
+		assertEquals(jar().length(), target.length());
+		assertEquals(1, target.getParentFile().list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".jar");
+			}
+		}).length);
+	}
+
+	@Test
+	public void testDownloadWithBadChecksum() throws Exception {
+		File repo = repository("badchecksum",
+				"0123456789012345678901234567890123456789  main-0.0.1-SNAPSHOT.jar");
+		System.setProperty("thin.repo", repo.toURI().toURL().toString());
+		String local = new File("target/badchecksum/local").getAbsolutePath();
+		delete(new File(local));
+		try {
+			new Library("com.example:main:0.0.1-SNAPSHOT").download(local, local);
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("Cannot download"));
+		}
+		assertFalse(new File(local + "/com/example/main/0.0.1-SNAPSHOT",
+				"main-0.0.1-SNAPSHOT.jar").exists());
+	}
+
+	@Test
+	public void testEmbeddedLauncher() throws Exception {
+		System.setProperty("thin.repo",
+				new File("target/embedded/remote").getAbsoluteFile().toURI().toURL()
+						.toString());
+		String local = new File("target/embedded/local").getAbsolutePath();
+		delete(new File(local));
+		new Library("com.example:embedded:0.0.1-SNAPSHOT").download(local, local);
+		assertTrue(new File(local + "/com/example/embedded/0.0.1-SNAPSHOT",
+				"embedded-0.0.1-SNAPSHOT.jar").exists());
+	}
+
+	@Test
+	public void testConcurrentDownload() throws Exception {
+		File repo = repository("concurrent", sha1(jar()));
+		System.setProperty("thin.repo", repo.toURI().toURL().toString());
+		final String local = new File("target/concurrent/local").getAbsolutePath();
+		delete(new File(local));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						new Library("com.example:main:0.0.1-SNAPSHOT").download(local,
+								local);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals(jar().length(), new File(local + "/com/example/main/0.0.1-SNAPSHOT",
+				"main-0.0.1-SNAPSHOT.jar").length());
+	}
+
 	@Test
 	public void testSystemEnvironmentOverride() throws Exception {
 		String key = null;
@@ -105,4 +197,36 @@ public class ThinJarWrapperTests {
 		}
 	}
 
+	private File jar() {
+		return new File(
+				"src/test/resources/repository/com/example/main/0.0.1-SNAPSHOT/main-0.0.1-SNAPSHOT.jar");
+	}
+
+	private File repository(String name, String checksum) throws Exception {
+		File repo = new File("target/" + name + "/remote").getAbsoluteFile();
+		File directory = new File(repo, "com/example/main/0.0.1-SNAPSHOT");
+		delete(repo);
+		directory.mkdirs();
+		Files.copy(jar().toPath(), new File(directory, jar().getName()).toPath());
+		Files.write(new File(directory, jar().getName() + ".sha1").toPath(),
+				checksum.getBytes("UTF-8"));
+		return repo;
+	}
+
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private String sha1(File file) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		digest.update(Files.readAllBytes(file.toPath()));
+		return String.format("%040x", new BigInteger(1, digest.digest()));
+	}
+
 }